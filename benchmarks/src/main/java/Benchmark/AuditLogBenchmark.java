@@ -0,0 +1,84 @@
+package Benchmark;
+
+import Model.Audit;
+import Storage.AuditLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// What an audited action pays for its record: AuditLog.append from 8 threads at once, flat out. Far more than
+// the consumer can write, so most appends find the ring full; the trial checks that every record appended was
+// either read back from the segments or counted in a LOST record, and prints how many were dropped.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class AuditLogBenchmark {
+    @State(Scope.Benchmark)
+    public static class Log {
+        Path dir;
+        AuditLog log;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            dir = Files.createTempDirectory("gahinga-audit");
+            log = new AuditLog(dir);
+        }
+
+        @TearDown(Level.Trial)
+        public void verify() throws IOException {
+            log.close();
+            long[] read = new long[2];
+            for (Path segment : AuditLog.list(dir)) {
+                AuditLog.read(segment, (sequence, millis, action, outcome, count, actor, target) -> {
+                    if (action == AuditLog.LOST) {
+                        read[1] += count;
+                    } else {
+                        read[0]++;
+                    }
+                });
+            }
+            System.err.println("Audit records written " + read[0] + ", dropped " + log.getDropped());
+            if (read[1] != log.getDropped()) {
+                throw new IllegalStateException("Dropped " + log.getDropped() + " records but the segments hold "
+                        + read[1]);
+            }
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Actor {
+        final String email = "admin" + Thread.currentThread().getId() + "@lpmt.com";
+        final String uuid = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public boolean append(Log log, Actor actor) {
+        return log.log.append(Audit.MODIFY_PROFILE, AuditLog.OK, 1, actor.email, actor.uuid);
+    }
+}
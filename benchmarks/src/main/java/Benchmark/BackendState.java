@@ -0,0 +1,69 @@
+package Benchmark;
+
+import Model.Backend;
+import Model.Backends;
+import Model.ScriptBackend;
+import Model.ScriptLocator;
+import Model.StoreBackend;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// One synthetic store per trial, served by the backend under test and installed as Backends.current() so the
+// Model classes use it exactly as the console does. The Model methods print their replies; stdout is
+// discarded while a trial runs so the benchmarks measure the work, not the terminal.
+@State(Scope.Benchmark)
+public class BackendState {
+    @Param({"store", "script"})
+    public String backend;
+
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+
+    public SyntheticStore store;
+    public Backend instance;
+    private PrintStream stdout;
+
+    // Users whose registration is only initiated; benchmarks that complete registrations raise it
+    protected int pendingUsers() {
+        return 0;
+    }
+
+    @Setup(Level.Trial)
+    public void openStore() throws IOException {
+        store = SyntheticStore.create(users, pendingUsers());
+        System.setProperty(Backends.STORAGE_DIR_PROPERTY, store.getStorageDir().toString());
+        if ("script".equals(backend)) {
+            System.setProperty(ScriptLocator.SCRIPT_PATH_PROPERTY, store.getScript().toString());
+            ScriptLocator.forName(ScriptLocator.USER_MANAGER).invalidate();
+            instance = new ScriptBackend();
+        } else if ("store".equals(backend)) {
+            instance = new StoreBackend(store.getStorageDir());
+        } else {
+            throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+        Backends.use(instance);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    // Runs at the end of the trial while the store still exists, for benchmarks that check what they wrote
+    protected void beforeClose() {}
+
+    @TearDown(Level.Trial)
+    public void closeStore() throws IOException {
+        System.setOut(stdout);
+        beforeClose();
+        if (instance instanceof StoreBackend) {
+            ((StoreBackend) instance).close();
+        }
+        store.delete();
+    }
+}
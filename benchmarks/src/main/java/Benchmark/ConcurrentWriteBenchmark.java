@@ -0,0 +1,105 @@
+package Benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// modify-patient-profile from many threads at once, FIELDS threads per patient. Each thread owns one field of its
+// patient and leaves the others blank, which keeps them, so the calls on one patient only stay correct if each
+// reads and writes the record without another writer in between. When the trial ends every field must hold the
+// last value its thread wrote, otherwise the run fails with the lost update. Change the writer count with -t.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(12)
+@Fork(1)
+public class ConcurrentWriteBenchmark {
+    // First name, last name, date of birth
+    private static final int FIELDS = 3;
+    private static final String[] LABELS = {"First Name: ", "Last Name: ", "Date of Birth: "};
+    private static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1940, 1, 1);
+
+    @State(Scope.Benchmark)
+    public static class Writes extends BackendState {
+        final AtomicInteger writers = new AtomicInteger();
+        // "<uuid>#<field>" to the last value written and confirmed
+        final Map<String, String> expected = new ConcurrentHashMap<>();
+
+        @Override
+        protected void beforeClose() {
+            int lost = 0;
+            for (int patient = 0; patient * FIELDS < writers.get(); patient++) {
+                String uuid = store.uuid(patient);
+                String profile = instance.execute("view-profile", uuid);
+                for (int field = 0; field < FIELDS; field++) {
+                    String value = expected.get(uuid + "#" + field);
+                    if (value != null && !profile.contains(LABELS[field] + value + "\n")) {
+                        System.err.println("Lost update: " + uuid + " should have " + LABELS[field] + value
+                                + " but has\n" + profile);
+                        lost++;
+                    }
+                }
+            }
+            if (lost > 0) {
+                throw new IllegalStateException(lost + " lost updates on the " + backend + " backend");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        int field;
+        String uuid;
+        int count;
+
+        @Setup(Level.Trial)
+        public void login(Writes writes) {
+            int index = writes.writers.getAndIncrement();
+            int patient = index / FIELDS;
+            if (patient >= writes.users) {
+                throw new IllegalStateException("More writers than patients");
+            }
+            field = index % FIELDS;
+            uuid = writes.store.uuid(patient);
+            String response = writes.instance.execute("login", writes.store.email(patient), SyntheticStore.PASSWORD);
+            if (!response.startsWith("PATIENT,")) {
+                throw new IllegalStateException("Login failed: " + response);
+            }
+        }
+    }
+
+    @Benchmark
+    public String modifyProfile(Writes writes, Writer writer) {
+        int count = ++writer.count;
+        String value;
+        if (writer.field == 2) {
+            value = FIRST_BIRTHDAY.plusDays(count % 20_000).toString();
+        } else {
+            value = (writer.field == 0 ? "First" : "Last") + Integer.toString(count, 36);
+        }
+        String[] args = {writer.uuid, "", "", "", "", "", "", "", ""};
+        args[1 + writer.field] = value;
+        String response = writes.instance.execute("modify-patient-profile", args);
+        if (!response.startsWith("Patient profile updated")) {
+            throw new IllegalStateException("Update failed: " + response);
+        }
+        writes.expected.put(writer.uuid + "#" + writer.field, value);
+        return response;
+    }
+}
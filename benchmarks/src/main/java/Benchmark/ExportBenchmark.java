@@ -0,0 +1,49 @@
+package Benchmark;
+
+import Model.Admin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The admin reports: Admin.exportUserData streams every patient into user_data.csv and
+// Admin.aggregateUserData writes the cohort statistics, both into the working directory (build/jmh).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportBenchmark {
+    @State(Scope.Benchmark)
+    public static class LoggedInAdmin {
+        Admin admin;
+
+        @Setup(Level.Trial)
+        public void login(BackendState state) {
+            admin = new Admin("", "", SyntheticStore.ADMIN_EMAIL, SyntheticStore.ADMIN_PASSWORD);
+            String response = admin.login();
+            if (!response.startsWith("ADMIN,")) {
+                throw new IllegalStateException("Admin login failed: " + response);
+            }
+        }
+    }
+
+    @Benchmark
+    public void exportUserData(LoggedInAdmin loggedIn) {
+        loggedIn.admin.exportUserData(false, rows -> { });
+    }
+
+    @Benchmark
+    public void aggregateUserData(LoggedInAdmin loggedIn) {
+        loggedIn.admin.aggregateUserData();
+    }
+}
@@ -0,0 +1,47 @@
+package Benchmark;
+
+import Model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Patient.computeLifeExpectancy for a patient whose profile was loaded at the start of the trial, so each
+// operation is the country lookup and the calculation the patient menu runs
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LifeExpectancyBenchmark {
+    @State(Scope.Benchmark)
+    public static class LoadedPatient {
+        Patient patient;
+
+        @Setup(Level.Trial)
+        public void load(BackendState state) {
+            int index = state.users / 2;
+            patient = new Patient(state.store.uuid(index), "", "", state.store.email(index), SyntheticStore.PASSWORD,
+                    null, false, null, false, null, "", null);
+            String response = patient.login();
+            if (!response.startsWith("PATIENT,") || !patient.loadProfile()) {
+                throw new IllegalStateException("Could not load the profile of " + patient.getEmail());
+            }
+        }
+    }
+
+    @Benchmark
+    public Patient computeLifeExpectancy(LoadedPatient loaded) {
+        loaded.patient.computeLifeExpectancy();
+        return loaded.patient;
+    }
+}
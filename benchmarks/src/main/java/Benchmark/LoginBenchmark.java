@@ -0,0 +1,40 @@
+package Benchmark;
+
+import Model.Patient;
+import Model.SessionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// User.login for a random registered patient. The session it opens is closed again right away so the
+// session table does not grow with the number of operations.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+    @State(Scope.Thread)
+    public static class Picker {
+        final SplittableRandom random = new SplittableRandom(1);
+    }
+
+    @Benchmark
+    public String login(BackendState state, Picker picker) {
+        int index = picker.random.nextInt(state.users);
+        Patient patient = new Patient(null, "", "", state.store.email(index), SyntheticStore.PASSWORD,
+                null, false, null, false, null, "", null);
+        String response = patient.login();
+        SessionManager.getDefault().close(patient.getSessionToken());
+        return response;
+    }
+}
@@ -0,0 +1,58 @@
+package Benchmark;
+
+import Model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Patient.viewProfile for patients logged in at the start of the trial, spread over the whole store.
+// On the script backend repeated views are served by its profile cache; run with
+// -jvmArgsAppend -Dgahinga.profileCache.size=0 to measure the script itself.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileBenchmark {
+    private static final int SESSIONS = 64;
+
+    @State(Scope.Benchmark)
+    public static class LoggedIn {
+        Patient[] patients;
+
+        @Setup(Level.Trial)
+        public void login(BackendState state) {
+            patients = new Patient[SESSIONS];
+            for (int i = 0; i < SESSIONS; i++) {
+                int index = (int) ((long) i * state.users / SESSIONS);
+                patients[i] = new Patient(state.store.uuid(index), "", "", state.store.email(index),
+                        SyntheticStore.PASSWORD, null, false, null, false, null, "", null);
+                String response = patients[i].login();
+                if (!response.startsWith("PATIENT,")) {
+                    throw new IllegalStateException("Login failed: " + response);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final SplittableRandom random = new SplittableRandom(2);
+    }
+
+    @Benchmark
+    public void viewProfile(LoggedIn loggedIn, Picker picker) {
+        loggedIn.patients[picker.random.nextInt(SESSIONS)].viewProfile();
+    }
+}
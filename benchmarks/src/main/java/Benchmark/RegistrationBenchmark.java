@@ -0,0 +1,58 @@
+package Benchmark;
+
+import Model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Patient.completeRegistration for users whose registration was initiated when the store was generated.
+// A registration can only be completed once, so each iteration is a fixed batch of BATCH registrations and
+// the store holds enough pending users for the default warmup and measurement; the score is per batch.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, batchSize = RegistrationBenchmark.BATCH)
+@Measurement(iterations = 5, batchSize = RegistrationBenchmark.BATCH)
+@Fork(1)
+public class RegistrationBenchmark {
+    static final int BATCH = 100;
+
+    @State(Scope.Benchmark)
+    public static class PendingState extends BackendState {
+        int next;
+
+        @Override
+        protected int pendingUsers() {
+            return 10 * BATCH;
+        }
+    }
+
+    private static final Date BORN = date(LocalDate.of(1985, 6, 15));
+    private static final Date INFECTED = date(LocalDate.of(2005, 3, 1));
+    private static final Date ART_START = date(LocalDate.of(2006, 1, 10));
+
+    @Benchmark
+    public String completeRegistration(PendingState state) {
+        if (state.next == state.store.getPending()) {
+            throw new IllegalStateException("Out of pending registrations; raise pendingUsers()");
+        }
+        int index = state.users + state.next++;
+        Patient patient = new Patient(state.store.uuid(index), "Bench", "Patient", state.store.email(index),
+                SyntheticStore.PASSWORD, BORN, true, INFECTED, true, ART_START, "RWA", null);
+        return patient.completeRegistration();
+    }
+
+    private static Date date(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
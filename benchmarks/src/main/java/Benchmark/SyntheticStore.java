@@ -0,0 +1,137 @@
+package Benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// A throwaway storage directory laid out like the repository (Bash/user-manager.sh next to Storage/), so both
+// backends work on the same files. It holds the admin, `users` registered patients with profiles and `pending`
+// users whose registration was only initiated. Values come from a fixed seed, so runs are comparable.
+public final class SyntheticStore {
+    public static final String ADMIN_EMAIL = "admin@lpmt.com";
+    public static final String ADMIN_PASSWORD = "admin123";
+    public static final String PASSWORD = "password";
+
+    private static final long SEED = 20240501L;
+
+    private final Path root;
+    private final int users;
+    private final int pending;
+
+    private SyntheticStore(Path root, int users, int pending) {
+        this.root = root;
+        this.users = users;
+        this.pending = pending;
+    }
+
+    public static SyntheticStore create(int users, int pending) throws IOException {
+        Path root = Files.createTempDirectory("gahinga-bench");
+        SyntheticStore store = new SyntheticStore(root, users, pending);
+        Files.createDirectories(store.getStorageDir());
+        Files.createDirectories(store.getScript().getParent());
+        copyResource("user-manager.sh", store.getScript());
+        Files.setPosixFilePermissions(store.getScript(), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Path lifeExpectancies = store.getStorageDir().resolve("life-expectancy.csv");
+        copyResource("life-expectancy.csv", lifeExpectancies);
+        store.write(countries(lifeExpectancies));
+        return store;
+    }
+
+    public Path getRoot() { return root; }
+    public Path getStorageDir() { return root.resolve("Storage"); }
+    public Path getScript() { return root.resolve("Bash").resolve("user-manager.sh"); }
+    public int getUsers() { return users; }
+    public int getPending() { return pending; }
+
+    // Registered patients are 0 .. users - 1, pending ones users .. users + pending - 1
+    public String email(int index) {
+        return "patient" + index + "@bench.test";
+    }
+
+    public String uuid(int index) {
+        return new UUID(0x6a6d680000004000L | ((long) index << 16), 0x8000000000000000L | index * 0x9E3779B97F4AL)
+                .toString();
+    }
+
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private void write(List<String> countries) throws IOException {
+        Random random = new Random(SEED);
+        String passwordHash = sha256(PASSWORD);
+        try (BufferedWriter userStore = Files.newBufferedWriter(getStorageDir().resolve("user-store.txt"));
+             BufferedWriter patientStore = Files.newBufferedWriter(getStorageDir().resolve("patients-store.txt"))) {
+            userStore.write(ADMIN_EMAIL + "," + uuid(-1) + "," + sha256(ADMIN_PASSWORD) + ",ADMIN,true,false\n");
+            for (int i = 0; i < users; i++) {
+                userStore.write(email(i) + "," + uuid(i) + "," + passwordHash + ",PATIENT,true,false\n");
+                int born = 1940 + random.nextInt(60);
+                boolean hiv = random.nextInt(4) == 0;
+                boolean art = hiv && random.nextBoolean();
+                String infected = hiv ? date(born + 15 + random.nextInt(10), random) : "";
+                String artStart = art ? date(born + 26, random) : "";
+                int remaining = 5 + random.nextInt(40);
+                patientStore.write(uuid(i) + ",First" + i + ",Last" + i + "," + date(born, random) + "," + hiv + ","
+                        + infected + "," + art + "," + artStart + "," + countries.get(random.nextInt(countries.size()))
+                        + "," + remaining + "," + date(2025 + remaining, random) + "\n");
+            }
+            for (int i = users; i < users + pending; i++) {
+                userStore.write(email(i) + "," + uuid(i) + ",,PATIENT,false,false\n");
+            }
+        }
+    }
+
+    private static String date(int year, Random random) {
+        return String.format("%04d-%02d-%02d", year, 1 + random.nextInt(12), 1 + random.nextInt(28));
+    }
+
+    // Alpha-3 codes of the countries that have a life expectancy
+    private static List<String> countries(Path lifeExpectancies) throws IOException {
+        List<String> codes = new ArrayList<>();
+        for (String line : Files.readAllLines(lifeExpectancies)) {
+            String[] fields = line.split(",");
+            if (fields.length >= 7 && fields[4].length() == 3 && !fields[6].isEmpty() && !line.startsWith("Country,")) {
+                codes.add(fields[4]);
+            }
+        }
+        return codes;
+    }
+
+    private static void copyResource(String name, Path target) throws IOException {
+        try (InputStream in = SyntheticStore.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing benchmark resource " + name);
+            }
+            Files.copy(in, target);
+        }
+    }
+
+    static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
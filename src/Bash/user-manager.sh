@@ -3,6 +3,7 @@
 SCRIPT_DIR="$(dirname "$(realpath "$0")")"
 USER_STORE="$SCRIPT_DIR/../Storage/user-store.txt"
 PATIENTS_STORE="$SCRIPT_DIR/../Storage/patients-store.txt"
+STORE_LOCK="$SCRIPT_DIR/../Storage/store.lock"
 INITIAL_ADMIN_EMAIL="admin@lpmt.com"
 INITIAL_ADMIN_PASSWORD="admin123"
 
@@ -31,6 +32,8 @@ initialize_user_store() {
 initiate_registration() {
     uuid=$1
     email=$2
+    # --new-email: the caller has proved the email unused, so the duplicate check is skipped
+    new_email=$3
 
     # Check if the UUID exists and retrieve user details
     user_record=$(grep ",$uuid," "$USER_STORE")
@@ -57,7 +60,7 @@ initiate_registration() {
     fi
 
     # Check if email already exists
-    if grep -q "^$email," "$USER_STORE"; then
+    if [ "$new_email" != "--new-email" ] && grep -q "^$email," "$USER_STORE"; then
         echo "Email already registered."
         exit 0
     fi
@@ -99,6 +102,32 @@ calculate_age() {
   echo $age
 }
 
+# Remaining years of a patient, same rules as Model.LifeExpectancyCalculator:
+# HIV-positive patients lose 10% for the year of diagnosis and every year until ART starts, rounded up;
+# everyone else keeps the remainder rounded down. One awk call instead of a bc fork per year of delay.
+remaining_lifespan() {
+  local country_lifespan="$1"
+  local birth_date="$2"
+  local has_hiv="$3"
+  local diagnosis_date="$4"
+  local art_start_date="$5"
+  local current_age years_delayed steps
+
+  current_age=$(calculate_age "$birth_date")
+  if [ "$has_hiv" != "true" ]; then
+    awk -v lifespan="$country_lifespan" -v age="$current_age" 'BEGIN { print int(lifespan - age) }'
+    return
+  fi
+
+  years_delayed=$(($(date -d "$art_start_date" +%Y) - $(date -d "$diagnosis_date" +%Y)))
+  steps=$((years_delayed + 1))
+  if [ "$steps" -lt 0 ]; then
+    steps=0
+  fi
+  awk -v lifespan="$country_lifespan" -v age="$current_age" -v steps="$steps" \
+    'BEGIN { print int((lifespan - age) * 0.9 ^ steps + 0.999999999) }'
+}
+
 complete_registration() {
   # Check if the user-store file is empty
   if [ ! -s "$USER_STORE" ]; then
@@ -138,9 +167,6 @@ complete_registration() {
   # Create a temporary file
   temp_file=$(mktemp)
 
-  # Get the age
-  current_age=$(calculate_age "$dateOfBirth")
-
   # Get the life expectancy for the country
   country_lifespan=$(get_life_expectancy "$countryISO")
 
@@ -150,13 +176,7 @@ complete_registration() {
   fi
 
   # Calculate the remaining lifespan
-  remaining_years=$(echo "$country_lifespan - $current_age" | bc)
-  years_delayed=$(($(date -d "$artStartDate" +%Y) - $(date -d "$diagnosisDate" +%Y)))
-
-  # Adjust remaining lifespan
-  for ((i = 0; i <= $years_delayed; i++)); do
-      remaining_years=$(echo "$remaining_years * 0.9" | bc | awk '{print int($1)}')
-  done
+  remaining_years=$(remaining_lifespan "$country_lifespan" "$dateOfBirth" "$hasHIV" "$diagnosisDate" "$artStartDate")
 
   # Calculate demise date
   demise_date=$(date -d "+$remaining_years years" +"%Y-%m-%d")
@@ -295,17 +315,8 @@ get_all_users() {
       exit 0
   fi
 
-  users=()
-
-  while IFS=, read -r stored_uuid firstname lastname dateOfBirth isHivPositive dateOfInfection onArtDrugs startARTDate country lifeExpectancy demiseDate
-  do
-    user="$stored_uuid,$firstname,$lastname,$dateOfBirth,$isHivPositive,$dateOfInfection,$onArtDrugs,$startARTDate,$country,$lifeExpectancy,$demiseDate"
-    users+=("$user")
-  done < "$PATIENTS_STORE"
-
-  for user in "${users[@]}"; do
-    echo "$user"
-  done
+  # One awk pass streams the rows instead of a read/echo per line; short rows are padded to 11 columns
+  awk -F, -v OFS=, '{ for (i = NF + 1; i <= 11; i++) $i = ""; print }' "$PATIENTS_STORE"
 }
 
 validate_uuid() {
@@ -400,8 +411,7 @@ modify_patient_profile() {
       new_artStartDate=${artStartDate:-$stored_artStartDate}
       new_countryISO=${countryISO:-$stored_countryISO}
 
-      # Calculate the new age and remaining lifespan if required
-      current_age=$(calculate_age "$new_dateOfBirth")
+      # Calculate the remaining lifespan and demise date
       country_lifespan=$(get_life_expectancy "$new_countryISO")
 
       if [ "$country_lifespan" = "Invalid country code" ]; then
@@ -410,26 +420,8 @@ modify_patient_profile() {
         exit 1
       fi
 
-      # If the patient has HIV, calculate the remaining lifespan and demise date
-      if [ "$new_hasHIV" == "true" ]; then
-        remaining_years=$(echo "$country_lifespan - $current_age" | bc)
-        years_delayed=$(($(date -d "$new_artStartDate" +%Y) - $(date -d "$new_diagnosisDate" +%Y)))
-
-        # Adjust remaining lifespan
-        for ((i = 0; i <= $years_delayed; i++)); do
-          remaining_years=$(echo "$remaining_years * 0.9" | bc)
-        done
-
-        # Round up to the next full year
-        rounded_years=$(echo "($remaining_years + 0.999999999)" | bc | awk '{print int($1)}')
-
-        # Calculate demise date
-        demise_date=$(date -d "+$rounded_years years" +"%Y-%m-%d")
-      else
-        # If the patient does not have HIV, assume normal life expectancy
-        rounded_years=$(echo "$country_lifespan - $current_age" | bc | awk '{print int($1)}')
-        demise_date=$(date -d "+$rounded_years years" +"%Y-%m-%d")
-      fi
+      rounded_years=$(remaining_lifespan "$country_lifespan" "$new_dateOfBirth" "$new_hasHIV" "$new_diagnosisDate" "$new_artStartDate")
+      demise_date=$(date -d "+$rounded_years years" +"%Y-%m-%d")
 
       echo "$uuid,$new_firstName,$new_lastName,$new_dateOfBirth,$new_hasHIV,$new_diagnosisDate,$new_onART,$new_artStartDate,$new_countryISO,$rounded_years,$demise_date" >> "$temp_file"
       uuid_found=true
@@ -448,62 +440,107 @@ modify_patient_profile() {
   fi
 }
 
-case $1 in
-  "initialize-user-store")
-    initialize_user_store
-    ;;
-  "get-life-expectancy")
-    get_life_expectancy $2
-    ;;
-  "validate-uuid")
-    if [ $# -ne 2 ]; then
-        echo "Usage: $0 validate-uuid <uuid>"
+# Serializes the commands that change a store. They copy the file to a temp file and move it back, so two
+# running at once would each drop the other's change. The lock is released when the command's process (or
+# its subshell in serve mode) ends. Without flock the commands run unlocked, as before.
+lock_stores() {
+  if command -v flock > /dev/null; then
+    exec 9>> "$STORE_LOCK"
+    flock 9
+  fi
+}
+
+# Runs one command, e.g. dispatch login <email> <password>
+dispatch() {
+  case $1 in
+    "initialize-user-store"|"initiate-registration"|"complete-registration"|"login"|"logout"|"modify-patient-profile")
+      lock_stores
+      ;;
+  esac
+  case $1 in
+    "initialize-user-store")
+      initialize_user_store
+      ;;
+    "get-life-expectancy")
+      get_life_expectancy $2
+      ;;
+    "validate-uuid")
+      if [ $# -ne 2 ]; then
+          echo "Usage: $0 validate-uuid <uuid>"
+          exit 1
+      fi
+      validate_uuid $2
+      ;;
+    "get-all-users")
+      get_all_users $2
+      ;;
+    "initiate-registration")
+      if [ $# -ne 3 ] && { [ $# -ne 4 ] || [ "$4" != "--new-email" ]; }; then
+        echo "Usage: $0 initiate-registration <UUID_code> <email> [--new-email]"
         exit 1
-    fi
-    validate_uuid $2
-    ;;
-  "get-all-users")
-    get_all_users
-    ;;
-  "initiate-registration")
-    if [ $# -ne 3 ]; then
-      echo "Usage: $0 initiate-registration <UUID_code> <email>"
-      exit 1
-    fi
-    initiate_registration $2 $3
-    ;;
-  "complete-registration")
-    shift
-    complete_registration "$@"
-    ;;
-  "view-profile")
-    if [ $# -ne 2 ]; then
-      echo "Usage: $0 view-profile <UUID_code>"
-      exit 1
-    fi
-    view_profile $2
-    ;;
-  "login")
-    if [ $# -ne 3 ]; then
-      echo "Usage: $0 login <email> <password>"
-      exit 1
-    fi
-    login $2 $3
-    ;;
-  "logout")
-    if [ $# -ne 2 ]; then
-      echo "Usage: $0 logout <email>"
+      fi
+      initiate_registration $2 $3 $4
+      ;;
+    "complete-registration")
+      shift
+      complete_registration "$@"
+      ;;
+    "view-profile")
+      if [ $# -ne 2 ]; then
+        echo "Usage: $0 view-profile <UUID_code>"
+        exit 1
+      fi
+      view_profile $2
+      ;;
+    "login")
+      if [ $# -ne 3 ]; then
+        echo "Usage: $0 login <email> <password>"
+        exit 1
+      fi
+      login $2 $3
+      ;;
+    "logout")
+      if [ $# -ne 2 ]; then
+        echo "Usage: $0 logout <email>"
+        exit 1
+      fi
+      logout $2
+      ;;
+    "modify-patient-profile")
+      shift
+      modify_patient_profile "$@"
+      ;;
+    *)
+      echo "Unknown command: $1"
+      echo "Usage: $0 <initialize-user-store|initiate-registration|complete-registration|view-profile|login|modify-patient-profile> [<args>]"
       exit 1
-    fi
-    logout $2
-    ;;
-  "modify-patient-profile")
-    shift
-    modify_patient_profile "$@"
-    ;;
-  *)
-    echo "Unknown command: $1"
-    echo "Usage: $0 <initialize-user-store|initiate-registration|complete-registration|view-profile|login|modify-patient-profile> [<args>]"
-    exit 1
-    ;;
-esac
\ No newline at end of file
+      ;;
+  esac
+}
+
+# Coprocess mode: keeps answering framed requests on stdin until EOF so callers
+# don't pay a bash start-up per command.
+# Request: "<argc>\n" followed by argc lines, one argument per line.
+# Reply:   "<exit_code> <byte_length>\n" followed by exactly byte_length bytes of output.
+serve() {
+  # Byte semantics for ${#output}
+  local LC_ALL=C
+  local argc arg output status n
+  while IFS= read -r argc; do
+    local args=()
+    for ((n = 0; n < argc; n++)); do
+      IFS= read -r arg
+      args+=("$arg")
+    done
+    # Command substitution runs in a subshell, so "exit" inside a command only ends that command
+    output=$(dispatch "${args[@]}")
+    status=$?
+    printf '%d %d\n%s' "$status" "${#output}" "$output"
+  done
+}
+
+if [ "$1" = "serve" ]; then
+  serve
+else
+  dispatch "$@"
+fi
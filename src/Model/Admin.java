@@ -1,15 +1,23 @@
 package Model;
 
-import java.io.BufferedReader;
+import Storage.PatientRecord;
+import Storage.PatientSnapshot;
+import Storage.PatientTable;
+
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Scanner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 
 public class Admin extends User {
-    private static final Scanner scanner = new Scanner(System.in);
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_ERRORS_SHOWN = 20;
+
+    private String uuid; // From the login reply; identifies the admin to registration commands
 
     public Admin() {
         super();
@@ -21,34 +29,68 @@ public class Admin extends User {
         setAccessType();
     }
 
+    public String getUuid() { return uuid; }
+    public void setUuid(String uuid) { this.uuid = uuid; }
+
     // Admin-specific methods
+    // Takes UUIDs or list filters; either way the backend deletes them in one batch
     public void deleteUsers() {
-        // Implementation
+        if (!checkSession()) {
+            return;
+        }
+        Terminal.out().println("UUIDs to delete separated by spaces, or filters (e.g. country=RWA registered=false):");
+        String line = Terminal.in().nextLine().trim();
+        if (line.isEmpty()) {
+            Terminal.out().println("Nothing to delete.");
+            return;
+        }
+        String[] targets = line.split("\\s+");
+        Terminal.out().print("Delete the matching users and their profiles? (y/n): ");
+        if (!Terminal.in().nextLine().trim().equalsIgnoreCase("y")) {
+            Terminal.out().println("Cancelled.");
+            return;
+        }
+        String[] args = new String[targets.length + 1];
+        args[0] = getAccessType().name();
+        System.arraycopy(targets, 0, args, 1, targets.length);
+        String response = backend().execute("delete-users", args);
+        boolean deleted = response.startsWith("Deleted ");
+        Audit.record(Audit.DELETE_USERS, deleted, deleted ? leadingNumber(response, 8) : 0, getEmail(), line);
+        if (response.startsWith("Unknown command")) {
+            Terminal.out().println("Deleting users needs the store backend (-Dgahinga.backend=store).");
+            return;
+        }
+        Terminal.out().println(response);
     }
 
     public void exportUserData() {
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                String response = executeScript(scriptPath, "get-all-users");
-                String csvFile = getFilePath("user_data.csv");
-                BufferedWriter writer = new BufferedWriter(new FileWriter(csvFile));
-                writer.write("UUID,Email,FirstName,LastName,DateOfBirth,IsHivPositive,DateOfInfection,OnARTDrugs,StartARTDate,Country,LifeExpectancy");
-                writer.newLine();
+        exportUserData(false, rows -> Terminal.out().println("Exported " + rows + " rows..."));
+    }
 
-                String[] users = response.split("\n");
-                for (String user : users) {
-                    writer.write(user);
-                    writer.newLine();
-                }
-                writer.close();
-                System.out.println("User data exported successfully to " + csvFile);
-            } else {
-                System.out.println("Script not found.");
-            }
+    // Streams every patient row into user_data.csv (user_data.csv.gz when gzip is set)
+    public void exportUserData(boolean gzip, UserDataExporter.Progress progress) {
+        if (!checkSession()) {
+            return;
+        }
+        String csvFile = getFilePath(gzip ? "user_data.csv.gz" : "user_data.csv");
+        try {
+            long rows = new UserDataExporter(backend())
+                    .export(getAccessType().name(), Paths.get(csvFile), gzip, progress);
+            Audit.record(Audit.EXPORT, true, rows, getEmail(), csvFile);
+            Terminal.out().println("User data exported successfully to " + csvFile);
         } catch (IOException e) {
-            e.printStackTrace();
+            Audit.record(Audit.EXPORT, false, 0, getEmail(), csvFile);
+            Terminal.out().println("Export failed: " + e.getMessage());
+        }
+    }
+
+    // The number at the given offset of a reply such as "Deleted 12 users"
+    private static long leadingNumber(String response, int from) {
+        long number = 0;
+        for (int i = from; i < response.length() && Character.isDigit(response.charAt(i)); i++) {
+            number = number * 10 + (response.charAt(i) - '0');
         }
+        return number;
     }
 
     private String userToCsv(User user) {
@@ -68,48 +110,163 @@ public class Admin extends User {
     }
 
     public void aggregateUserData() {
+        if (!checkSession()) {
+            return;
+        }
         String csvFile = getFilePath("user_data_aggregated.csv");
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(csvFile))) {
-            writer.write("UUID,Email,FirstName,LastName,DateOfBirth,IsHivPositive,DateOfInfection,OnARTDrugs,StartARTDate,Country,LifeExpectancy");
-            writer.newLine();
-
-            // for (User user : users) {
-            //     writer.write(userToCsv(user));
-            //     writer.newLine();
-            // }
-
-            System.out.println("User data aggregated successfully to " + csvFile);
+        try {
+            CohortAggregator aggregator = new CohortAggregator(Backends.lifeExpectancies(), LocalDate.now());
+            aggregate(aggregator).writeCsv(Paths.get(csvFile));
+            Audit.record(Audit.AGGREGATE, true, 0, getEmail(), csvFile);
+            Terminal.out().println("User data aggregated successfully to " + csvFile);
         } catch (IOException e) {
-            e.printStackTrace();
+            Audit.record(Audit.AGGREGATE, false, 0, getEmail(), csvFile);
+            Terminal.out().println("Aggregation failed: " + e.getMessage());
         }
     }
 
+    // The store backend hands its records over directly. With the script backend patients-store.col is read
+    // column by column when it matches patients-store.txt; otherwise the text file is mapped, packed, and a
+    // fresh snapshot is left behind for the next run.
+    private CohortAggregator.Cohort aggregate(CohortAggregator aggregator) throws IOException {
+        Backend backend = backend();
+        if (backend instanceof StoreBackend) {
+            return aggregator.aggregate(PatientTable.of(((StoreBackend) backend).getPatientStore().findAll()));
+        }
+        Path storageDir = backend instanceof ScriptBackend ? ((ScriptBackend) backend).getStorageDir() : null;
+        Path textFile = storageDir != null ? storageDir.resolve("patients-store.txt") : null;
+        if (textFile != null && Files.exists(textFile)) {
+            try (PatientSnapshot snapshot = PatientSnapshot.openIfCurrent(textFile)) {
+                if (snapshot != null) {
+                    return aggregator.aggregate(snapshot);
+                }
+            }
+            long size = Files.size(textFile);
+            long modified = Files.getLastModifiedTime(textFile).toMillis();
+            PatientTable patients = PatientTable.load(textFile);
+            try {
+                PatientSnapshot.write(textFile, patients, size, modified);
+            } catch (IOException e) {
+                System.err.println("Error: could not write the patient snapshot: " + e.getMessage());
+            }
+            return aggregator.aggregate(patients);
+        }
+        PatientTable patients = new PatientTable(1024);
+        boolean[] first = {true};
+        backend.stream(line -> {
+            if (first[0] && (line.equals("Access denied") || line.equals("Script not found."))) {
+                throw new IOException(line);
+            }
+            first[0] = false;
+            patients.put(PatientRecord.parse(line));
+        }, "get-all-users", getAccessType().name());
+        return aggregator.aggregate(patients);
+    }
+
     @Override
     public void setAccessType() {
         this.accessType = UserRole.ADMIN;
     }
 
-    public void initiateRegistration(String accessType) {
+    public void initiateRegistration() {
+        if (!checkSession()) {
+            return;
+        }
         // Implementation
-        System.out.println("Initiate Registration");
-        System.out.print("Enter Email: ");
-        String email = scanner.nextLine();
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                String response = executeScript(scriptPath, "initiate-registration", accessType, email);
-                System.out.print(response);
-            } else {
-                System.out.println("Script not found.");
+        Terminal.out().println("Initiate Registration");
+        Terminal.out().print("Enter Email: ");
+        String email = Terminal.in().nextLine();
+        String response = backend().execute("initiate-registration", uuid, email);
+        Audit.record(Audit.INITIATE_REGISTRATION, response.startsWith("Registration initiated"), 1, getEmail(), email);
+        Terminal.out().print(response);
+        Terminal.out().println();
+    }
+
+    // Registers every row of a CSV file in one batch and writes the new UUIDs and per-row errors to
+    // registration-results.csv. Rows are an email, or a full profile as for complete registration:
+    // email,firstName,lastName,dateOfBirth,hasHIV,diagnosisDate,onART,artStartDate,countryISO,password
+    public void importRegistrations() {
+        if (!checkSession()) {
+            return;
+        }
+        Terminal.out().print("Enter CSV file name (in the import directory): ");
+        // Resolved by the backend against its import directory
+        String csvFile = Terminal.in().nextLine().trim();
+        String response = backend().execute("import-registrations", uuid, csvFile);
+        boolean imported = response.startsWith("Imported ");
+        Audit.record(Audit.IMPORT_REGISTRATIONS, imported, imported ? leadingNumber(response, 9) : 0, getEmail(),
+                csvFile);
+        if (response.startsWith("Unknown command")) {
+            Terminal.out().println("Importing registrations needs the store backend (-Dgahinga.backend=store).");
+            return;
+        }
+        if (!response.startsWith("Imported ")) {
+            Terminal.out().println(response);
+            return;
+        }
+        String[] lines = response.split("\n");
+        String resultFile = getFilePath("registration-results.csv");
+        int errors = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(resultFile))) {
+            writer.write("Line,Email,UUID,Error");
+            writer.newLine();
+            for (int i = 1; i < lines.length; i++) {
+                writer.write(lines[i]);
+                writer.newLine();
+                String[] row = lines[i].split(",", 4);
+                if (row.length == 4 && !row[3].isEmpty() && errors++ < MAX_ERRORS_SHOWN) {
+                    Terminal.out().println("Line " + row[0] + (row[1].isEmpty() ? "" : " (" + row[1] + ")") + ": "
+                            + row[3]);
+                }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            Terminal.out().println("Could not write " + resultFile + ": " + e.getMessage());
+        }
+        if (errors > MAX_ERRORS_SHOWN) {
+            Terminal.out().println("... and " + (errors - MAX_ERRORS_SHOWN) + " more errors");
         }
-        System.out.println();
+        Terminal.out().println(lines[0] + ". Results written to " + resultFile);
     }
 
     public void getAllUsers() {
-        // Implementation
+        if (!checkSession()) {
+            return;
+        }
+        Terminal.out().println("Filters (e.g. country=RWA hiv=true art=false registered=true role=PATIENT), or Enter for all:");
+        String filterLine = Terminal.in().nextLine().trim();
+        String[] filters = filterLine.isEmpty() ? new String[0] : filterLine.split("\\s+");
+        String cursor = "-";
+        while (true) {
+            String[] args = new String[filters.length + 3];
+            args[0] = getAccessType().name();
+            args[1] = cursor;
+            args[2] = String.valueOf(PAGE_SIZE);
+            System.arraycopy(filters, 0, args, 3, filters.length);
+            String response = backend().execute("list-users", args);
+            int newline = response.indexOf('\n');
+            String status = newline < 0 ? response : response.substring(0, newline);
+            if (status.startsWith("Unknown command")) {
+                Terminal.out().println("Listing users needs the store backend (-Dgahinga.backend=store).");
+                return;
+            }
+            if (!status.equals("END") && !status.startsWith("NEXT ")) {
+                // Refusals and bad filters
+                Terminal.out().println(response);
+                return;
+            }
+            if (newline >= 0) {
+                Terminal.out().println(response.substring(newline + 1));
+            }
+            if (status.equals("END")) {
+                Terminal.out().println("End of list.");
+                return;
+            }
+            Terminal.out().print("Press Enter for the next page or q to stop: ");
+            if (Terminal.in().nextLine().trim().equalsIgnoreCase("q")) {
+                return;
+            }
+            cursor = status.substring(5);
+        }
     }
 
     @Override
@@ -123,64 +280,7 @@ public class Admin extends User {
                 '}';
     }
 
-    // Method to find the script path dynamically
-    public String findScript(String scriptName) throws IOException {
-        File currentDir = new File(".");
-        return searchForScript(currentDir, scriptName);
-    }
-
-    private String searchForScript(File directory, String scriptName) throws IOException {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    String result = searchForScript(file, scriptName);
-                    if (result != null) {
-                        return result;
-                    }
-                } else if (file.getName().equals(scriptName)) {
-                    return file.getCanonicalPath();
-                }
-            }
-        }
-        return null;
-    }
-
     private String getFilePath(String fileName) {
         return new File(fileName).getAbsolutePath();
     }
-
-    public static String executeScript(String... command) {
-        StringBuilder response = new StringBuilder();
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-
-        try {
-            Process process = processBuilder.start();
-
-            // Capture output from the script
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line).append(System.lineSeparator());
-            }
-
-            // Capture any errors from the script
-            BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String errorLine;
-            while ((errorLine = errorReader.readLine()) != null) {
-                System.err.println("Error: " + errorLine);
-            }
-
-            // Wait for the script to finish
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                System.err.println("Script exited with error code: " + exitCode);
-            }
-
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        return response.toString().trim(); // Trim to remove any trailing new lines
-    }
 }
@@ -0,0 +1,81 @@
+package Model;
+
+import Storage.AuditLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Who did what to health data: admin exports, aggregations, registrations and deletions and patient profile
+// changes, recorded through the lock-free Storage.AuditLog into -Dgahinga.audit.dir (default audit/ under the
+// storage directory). Recording never waits on the disk; -Dgahinga.audit=false turns the trail off.
+public final class Audit {
+    public static final String ENABLED_PROPERTY = "gahinga.audit";
+    public static final String DIR_PROPERTY = "gahinga.audit.dir";
+
+    public static final byte EXPORT = 1;
+    public static final byte AGGREGATE = 2;
+    public static final byte INITIATE_REGISTRATION = 3;
+    public static final byte IMPORT_REGISTRATIONS = 4;
+    public static final byte DELETE_USERS = 5;
+    public static final byte MODIFY_PROFILE = 6;
+
+    private static final String[] NAMES = {"lost", "export", "aggregate", "initiate-registration",
+            "import-registrations", "delete-users", "modify-profile"};
+
+    private static volatile AuditLog defaultLog;
+    private static volatile boolean unavailable;
+
+    private Audit() {}
+
+    // Opened on first use and closed, with everything still queued written, when the JVM exits.
+    // Null when the trail is off or its directory cannot be written.
+    public static AuditLog getDefault() {
+        AuditLog log = defaultLog;
+        if (log == null && !unavailable) {
+            synchronized (Audit.class) {
+                log = defaultLog;
+                if (log == null && !unavailable) {
+                    log = open();
+                    defaultLog = log;
+                    unavailable = log == null;
+                }
+            }
+        }
+        return log;
+    }
+
+    private static AuditLog open() {
+        if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+            return null;
+        }
+        String configured = System.getProperty(DIR_PROPERTY);
+        Path dir = configured != null && !configured.isEmpty() ? Paths.get(configured)
+                : Backends.storageDir().resolve("audit");
+        try {
+            AuditLog log = new AuditLog(dir);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.err.println("Error: could not close the audit log: " + e.getMessage());
+                }
+            }, "audit-close"));
+            return log;
+        } catch (IOException e) {
+            System.err.println("Error: audit trail disabled, cannot write " + dir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void record(byte action, boolean ok, long count, String actor, String target) {
+        AuditLog log = getDefault();
+        if (log != null) {
+            log.append(action, ok ? AuditLog.OK : AuditLog.FAILED, count, actor, target);
+        }
+    }
+
+    public static String nameOf(byte action) {
+        return action >= 0 && action < NAMES.length ? NAMES[action] : "action-" + action;
+    }
+}
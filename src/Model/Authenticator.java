@@ -0,0 +1,125 @@
+package Model;
+
+import Storage.UserRecord;
+import Storage.UserStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-process password check over a credential index built once from the user store.
+// The index maps email to (uuid, hash bytes, role, registered) and follows every store write, so a login is
+// one map lookup, one SHA-256 and a constant-time comparison however many users there are.
+public final class Authenticator {
+    public enum Status { SUCCESS, UNKNOWN_EMAIL, BAD_PASSWORD, NOT_REGISTERED }
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final Map<String, Credential> byEmail = new ConcurrentHashMap<>();
+
+    public Authenticator(UserStore users) {
+        // Register first so no write between the snapshot and the listener is missed
+        users.addListener(this::index);
+        users.addDeleteListener(user -> byEmail.computeIfPresent(user.getEmail(),
+                (email, credential) -> credential.uuid.equals(user.getUuid()) ? null : credential));
+        for (UserRecord user : users.findAll()) {
+            // The store resolves duplicate emails to the first line; keep the same record here
+            if (user == users.findByEmail(user.getEmail())) {
+                index(user);
+            }
+        }
+    }
+
+    public Result authenticate(String email, String password) {
+        Credential credential = byEmail.get(email);
+        if (credential == null) {
+            return new Result(Status.UNKNOWN_EMAIL, null, null);
+        }
+        byte[] hash = SHA256.get().digest(password.getBytes(StandardCharsets.UTF_8));
+        if (credential.hash == null || !MessageDigest.isEqual(credential.hash, hash)) {
+            return new Result(Status.BAD_PASSWORD, null, null);
+        }
+        if (!credential.registered) {
+            return new Result(Status.NOT_REGISTERED, credential.uuid, credential.role);
+        }
+        return new Result(Status.SUCCESS, credential.uuid, credential.role);
+    }
+
+    public int size() {
+        return byEmail.size();
+    }
+
+    private void index(UserRecord user) {
+        Credential existing = byEmail.get(user.getEmail());
+        if (existing != null && !existing.uuid.equals(user.getUuid())) {
+            // A later duplicate line never wins over the first one
+            return;
+        }
+        byEmail.put(user.getEmail(), new Credential(user.getUuid(), decodeHex(user.getPasswordHash()),
+                roleOf(user.getAccessType()), user.isRegistered()));
+    }
+
+    private static UserRole roleOf(String accessType) {
+        try {
+            return UserRole.valueOf(accessType);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // null for an empty or malformed hash, which then never matches
+    private static byte[] decodeHex(String hex) {
+        if (hex == null || hex.isEmpty() || hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static final class Credential {
+        final String uuid;
+        final byte[] hash;
+        final UserRole role;
+        final boolean registered;
+
+        Credential(String uuid, byte[] hash, UserRole role, boolean registered) {
+            this.uuid = uuid;
+            this.hash = hash;
+            this.role = role;
+            this.registered = registered;
+        }
+    }
+
+    public static final class Result {
+        private final Status status;
+        private final String uuid;
+        private final UserRole role;
+
+        Result(Status status, String uuid, UserRole role) {
+            this.status = status;
+            this.uuid = uuid;
+            this.role = role;
+        }
+
+        public Status getStatus() { return status; }
+        public String getUuid() { return uuid; }
+        public UserRole getRole() { return role; }
+        public boolean isSuccess() { return status == Status.SUCCESS; }
+    }
+}
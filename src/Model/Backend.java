@@ -0,0 +1,25 @@
+package Model;
+
+import java.io.IOException;
+
+// Serves the user-manager commands (login, view-profile, complete-registration, ...).
+// Replies use the same text as src/Bash/user-manager.sh so callers don't care which backend answers.
+public interface Backend {
+    String execute(String command, String... args);
+
+    // Hands the reply to lines one line at a time, for commands with large replies such as get-all-users.
+    // The default buffers the whole reply; backends that can do better override it.
+    default void stream(LineSink lines, String command, String... args) throws IOException {
+        String response = execute(command, args);
+        if (response.isEmpty()) {
+            return;
+        }
+        for (String line : response.split("\\n")) {
+            lines.accept(line);
+        }
+    }
+
+    interface LineSink {
+        void accept(String line) throws IOException;
+    }
+}
@@ -0,0 +1,102 @@
+package Model;
+
+import Storage.LifeExpectancyTable;
+import Storage.StoreLockedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Picks the backend once per JVM.
+// -Dgahinga.backend=store (default) keeps the stores in memory, -Dgahinga.backend=script forks user-manager.sh.
+public final class Backends {
+    public static final String BACKEND_PROPERTY = "gahinga.backend";
+    public static final String STORAGE_DIR_PROPERTY = "gahinga.storage.dir";
+
+    private static volatile Backend current;
+    private static volatile LifeExpectancyTable lifeExpectancies;
+
+    private Backends() {}
+
+    public static Backend current() {
+        Backend backend = current;
+        if (backend == null) {
+            synchronized (Backends.class) {
+                backend = current;
+                if (backend == null) {
+                    backend = create();
+                    current = backend;
+                }
+            }
+        }
+        return backend;
+    }
+
+    // Lets tools and benchmarks swap the backend explicitly
+    public static synchronized void use(Backend backend) {
+        current = backend;
+    }
+
+    // Life expectancy table of the storage directory, shared with the store backend when it runs
+    public static LifeExpectancyTable lifeExpectancies() {
+        Backend backend = current();
+        if (backend instanceof StoreBackend) {
+            return ((StoreBackend) backend).getLifeExpectancies();
+        }
+        LifeExpectancyTable table = lifeExpectancies;
+        if (table == null) {
+            synchronized (Backends.class) {
+                table = lifeExpectancies;
+                if (table == null) {
+                    try {
+                        table = LifeExpectancyTable.load(storageDir().resolve("life-expectancy.csv"));
+                        table.watch();
+                        lifeExpectancies = table;
+                    } catch (IOException e) {
+                        System.err.println("Error: could not load life expectancies: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    public static Path storageDir() {
+        String configured = System.getProperty(STORAGE_DIR_PROPERTY);
+        if (configured != null && !configured.isEmpty()) {
+            return Paths.get(configured);
+        }
+        for (String candidate : new String[] {"src/Storage", "Storage", "../Storage"}) {
+            Path path = Paths.get(candidate);
+            if (Files.isDirectory(path)) {
+                return path;
+            }
+        }
+        return Paths.get("Storage");
+    }
+
+    private static Backend create() {
+        String kind = System.getProperty(BACKEND_PROPERTY, "store");
+        if ("script".equalsIgnoreCase(kind)) {
+            return new ScriptBackend();
+        }
+        try {
+            StoreBackend backend = new StoreBackend(storageDir());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    backend.close();
+                } catch (IOException e) {
+                    System.err.println("Error: could not compact the stores: " + e.getMessage());
+                }
+            }, "store-shutdown"));
+            return backend;
+        } catch (StoreLockedException e) {
+            // The script would rewrite the text files underneath the JVM that has them open
+            throw new IllegalStateException("The stores are open in another process: " + e.getMessage(), e);
+        } catch (IOException e) {
+            System.err.println("Error: could not open the stores, falling back to user-manager.sh: " + e.getMessage());
+            return new ScriptBackend();
+        }
+    }
+}
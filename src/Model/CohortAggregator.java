@@ -0,0 +1,253 @@
+package Model;
+
+import Storage.LifeExpectancyTable;
+import Storage.PatientSnapshot;
+import Storage.PatientTable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+// Cohort statistics over all patients, computed with a parallel stream.
+// Each worker fills its own Cohort of per-country accumulators and the partial results are merged at the end,
+// so there is no shared state while scanning.
+public final class CohortAggregator {
+    public static final String ALL_COUNTRIES = "ALL";
+    public static final String HEADER = "Country,Patients,HivPositive,HivPositiveRate,OnART,ARTCoverage," +
+            "MedianDiagnosisToARTDelayMonths,MedianRemainingYears," +
+            "RemainingUnder10,Remaining10to19,Remaining20to29,Remaining30to39,Remaining40to49," +
+            "Remaining50to59,Remaining60to69,Remaining70Plus";
+
+    // Delay histogram in months, capped at 100 years
+    private static final int MAX_DELAY_MONTHS = 1200;
+    private static final int MAX_REMAINING_YEARS = 150;
+    private static final int REMAINING_BUCKETS = 8;
+
+    private final LifeExpectancyTable lifeExpectancies;
+    private final LocalDate today;
+
+    public CohortAggregator(LifeExpectancyTable lifeExpectancies, LocalDate today) {
+        this.lifeExpectancies = lifeExpectancies;
+        this.today = today;
+    }
+
+    // Statistics over a PatientTable: each worker walks its slot range with its own Row view,
+    // so the scan allocates nothing per patient
+    public Cohort aggregate(PatientTable table) {
+        String[] countries = new String[table.countryCount()];
+        for (int id = 0; id < countries.length; id++) {
+            countries[id] = table.country(id);
+        }
+        double[] lifespans = lifespans(countries);
+        int currentYear = today.getYear();
+        Cohort cohort = IntStream.range(0, table.size()).parallel().collect(Cohort::new, (partial, slot) -> {
+            if (partial.row == null) {
+                partial.row = table.newRow();
+            }
+            PatientTable.Row row = partial.row.moveTo(slot);
+            addRow(partial, countries, lifespans, currentYear, row.getCountryId(), row.isHivPositive(),
+                    row.isOnARTDrugs(), row.getDateOfBirth(), row.getDateOfInfection(), row.getStartARTDate());
+        }, Cohort::merge);
+        cohort.finish();
+        return cohort;
+    }
+
+    // Same statistics from a columnar snapshot, reading only the six columns they need
+    public Cohort aggregate(PatientSnapshot snapshot) {
+        String[] countries = snapshot.countries();
+        double[] lifespans = lifespans(countries);
+        short[] countryIds = snapshot.countryIds();
+        long[] hivPositive = snapshot.bits(PatientSnapshot.Column.HIV_POSITIVE);
+        long[] onArt = snapshot.bits(PatientSnapshot.Column.ON_ART_DRUGS);
+        int[] dateOfBirth = snapshot.dates(PatientSnapshot.Column.DATE_OF_BIRTH);
+        int[] dateOfInfection = snapshot.dates(PatientSnapshot.Column.DATE_OF_INFECTION);
+        int[] startARTDate = snapshot.dates(PatientSnapshot.Column.START_ART_DATE);
+        int currentYear = today.getYear();
+        Cohort cohort = IntStream.range(0, snapshot.size()).parallel().collect(Cohort::new, (partial, row) ->
+                addRow(partial, countries, lifespans, currentYear, countryIds[row],
+                        PatientSnapshot.bit(hivPositive, row), PatientSnapshot.bit(onArt, row),
+                        dateOfBirth[row], dateOfInfection[row], startARTDate[row]), Cohort::merge);
+        cohort.finish();
+        return cohort;
+    }
+
+    private double[] lifespans(String[] countries) {
+        double[] lifespans = new double[countries.length];
+        for (int id = 0; id < countries.length; id++) {
+            lifespans[id] = lifeExpectancies != null ? lifeExpectancies.lookup(countries[id]) : Double.NaN;
+        }
+        return lifespans;
+    }
+
+    // One patient in columnar form: country by dictionary id, dates as epoch days or PatientTable.NO_DATE
+    private void addRow(Cohort cohort, String[] countries, double[] lifespans, int currentYear, int countryId,
+                        boolean hivPositive, boolean onArt, int dateOfBirth, int dateOfInfection, int startARTDate) {
+        if (cohort.countries == null) {
+            cohort.countries = new CountryStats[countries.length];
+        }
+        CountryStats stats = cohort.countries[countryId];
+        if (stats == null) {
+            stats = cohort.byCountry.computeIfAbsent(countries[countryId], CountryStats::new);
+            cohort.countries[countryId] = stats;
+        }
+
+        stats.patients++;
+        if (hivPositive) {
+            stats.hivPositive++;
+            if (onArt) {
+                stats.onArt++;
+                if (dateOfInfection != PatientTable.NO_DATE && startARTDate != PatientTable.NO_DATE) {
+                    long months = PatientTable.monthsBetween(dateOfInfection, startARTDate);
+                    stats.delayMonths[(int) Math.max(0, Math.min(MAX_DELAY_MONTHS, months))]++;
+                }
+            }
+        }
+
+        double lifespan = lifespans[countryId];
+        if (!Double.isNaN(lifespan) && dateOfBirth != PatientTable.NO_DATE) {
+            int remaining = LifeExpectancyCalculator.remainingYears(lifespan, PatientTable.yearOf(dateOfBirth),
+                    hivPositive,
+                    dateOfInfection != PatientTable.NO_DATE ? PatientTable.yearOf(dateOfInfection) : currentYear,
+                    startARTDate != PatientTable.NO_DATE ? PatientTable.yearOf(startARTDate) : currentYear,
+                    currentYear);
+            stats.remainingYears[Math.max(0, Math.min(MAX_REMAINING_YEARS, remaining))]++;
+        }
+    }
+
+    public static final class Cohort {
+        private final Map<String, CountryStats> byCountry = new TreeMap<>();
+        private CountryStats total;
+        // Columnar scan state: this worker's row view and its stats by country id
+        private PatientTable.Row row;
+        private CountryStats[] countries;
+
+        private void merge(Cohort other) {
+            for (CountryStats stats : other.byCountry.values()) {
+                byCountry.computeIfAbsent(stats.country, CountryStats::new).merge(stats);
+            }
+        }
+
+        private void finish() {
+            total = new CountryStats(ALL_COUNTRIES);
+            for (CountryStats stats : byCountry.values()) {
+                total.merge(stats);
+            }
+        }
+
+        public Map<String, CountryStats> getByCountry() { return byCountry; }
+        public CountryStats getTotal() { return total; }
+
+        public void writeCsv(Path file) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (CountryStats stats : byCountry.values()) {
+                    writer.write(stats.toCsv());
+                    writer.newLine();
+                }
+                writer.write(total.toCsv());
+                writer.newLine();
+            }
+        }
+    }
+
+    public static final class CountryStats {
+        private final String country;
+        private long patients;
+        private long hivPositive;
+        private long onArt;
+        private final long[] delayMonths = new long[MAX_DELAY_MONTHS + 1];
+        private final long[] remainingYears = new long[MAX_REMAINING_YEARS + 1];
+
+        private CountryStats(String country) {
+            this.country = country;
+        }
+
+        private void merge(CountryStats other) {
+            patients += other.patients;
+            hivPositive += other.hivPositive;
+            onArt += other.onArt;
+            for (int i = 0; i < delayMonths.length; i++) {
+                delayMonths[i] += other.delayMonths[i];
+            }
+            for (int i = 0; i < remainingYears.length; i++) {
+                remainingYears[i] += other.remainingYears[i];
+            }
+        }
+
+        public String getCountry() { return country; }
+        public long getPatients() { return patients; }
+        public long getHivPositive() { return hivPositive; }
+        public long getOnArt() { return onArt; }
+
+        public double getHivPositiveRate() {
+            return patients == 0 ? 0 : (double) hivPositive / patients;
+        }
+
+        // Share of HIV-positive patients on ART
+        public double getArtCoverage() {
+            return hivPositive == 0 ? 0 : (double) onArt / hivPositive;
+        }
+
+        // -1 when no patient has both dates
+        public int getMedianDelayMonths() {
+            return median(delayMonths);
+        }
+
+        public int getMedianRemainingYears() {
+            return median(remainingYears);
+        }
+
+        public long[] getRemainingYearsDistribution() {
+            long[] buckets = new long[REMAINING_BUCKETS];
+            for (int years = 0; years < remainingYears.length; years++) {
+                buckets[Math.min(REMAINING_BUCKETS - 1, years / 10)] += remainingYears[years];
+            }
+            return buckets;
+        }
+
+        private static int median(long[] histogram) {
+            long count = 0;
+            for (long c : histogram) {
+                count += c;
+            }
+            if (count == 0) {
+                return -1;
+            }
+            long middle = (count + 1) / 2;
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= middle) {
+                    return i;
+                }
+            }
+            return histogram.length - 1;
+        }
+
+        String toCsv() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(country).append(",");
+            sb.append(patients).append(",");
+            sb.append(hivPositive).append(",");
+            sb.append(String.format(Locale.ROOT, "%.4f", getHivPositiveRate())).append(",");
+            sb.append(onArt).append(",");
+            sb.append(String.format(Locale.ROOT, "%.4f", getArtCoverage())).append(",");
+            int delay = getMedianDelayMonths();
+            sb.append(delay < 0 ? "" : String.valueOf(delay)).append(",");
+            int remaining = getMedianRemainingYears();
+            sb.append(remaining < 0 ? "" : String.valueOf(remaining));
+            for (long bucket : getRemainingYearsDistribution()) {
+                sb.append(",").append(bucket);
+            }
+            return sb.toString();
+        }
+    }
+}
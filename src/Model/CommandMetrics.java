@@ -0,0 +1,188 @@
+package Model;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-command latency histograms for the backends, exposed as one MXBean per command and, with
+// -Dgahinga.metrics.dumpSeconds=<n>, as a text table every n seconds, appended to -Dgahinga.metrics.file
+// or printed to stderr when no file is set. The backends record every execute() end to end; the script path
+// also records how long getting a process and running the command took, the bytes it wrote and its exit code.
+public final class CommandMetrics {
+    public static final String DUMP_SECONDS_PROPERTY = "gahinga.metrics.dumpSeconds";
+    public static final String DUMP_FILE_PROPERTY = "gahinga.metrics.file";
+    private static final String DOMAIN = "gahinga";
+    private static final String UNKNOWN_COMMAND = "unknown";
+    private static final String UNKNOWN_REPLY = "Unknown command: ";
+    private static final String SYSTEM_ERROR_REPLY = "System error";
+
+    private static volatile CommandMetrics defaultMetrics;
+
+    private final Map<String, Stats> commands = new ConcurrentHashMap<>();
+    private final MBeanServer server;
+
+    public CommandMetrics(MBeanServer server) {
+        this.server = server;
+    }
+
+    public static CommandMetrics getDefault() {
+        CommandMetrics metrics = defaultMetrics;
+        if (metrics == null) {
+            synchronized (CommandMetrics.class) {
+                metrics = defaultMetrics;
+                if (metrics == null) {
+                    metrics = new CommandMetrics(ManagementFactory.getPlatformMBeanServer());
+                    long seconds = Long.getLong(DUMP_SECONDS_PROPERTY, 0L);
+                    if (seconds > 0) {
+                        metrics.dumpEvery(seconds, System.getProperty(DUMP_FILE_PROPERTY));
+                    }
+                    defaultMetrics = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    // End-to-end time of one command; failed is set when it threw or answered with a system error
+    public void record(String command, long nanos, boolean failed) {
+        Stats stats = stats(command);
+        stats.latency.record(nanos);
+        if (failed) {
+            stats.failures.increment();
+        }
+    }
+
+    // A backend reply, recorded under nameOf() the command
+    public void recordReply(String command, long nanos, String reply) {
+        record(nameOf(command, reply), nanos, reply == null || reply.startsWith(SYSTEM_ERROR_REPLY));
+    }
+
+    // Unknown commands share one entry so that every typo does not get an MBean of its own
+    public static String nameOf(String command, String reply) {
+        return reply != null && reply.startsWith(UNKNOWN_REPLY) ? UNKNOWN_COMMAND : command;
+    }
+
+    // One run of the script for the command; spawnNanos is negative when the caller could not separate it
+    public void recordScript(String command, long spawnNanos, long runNanos, long bytesRead, int exitCode) {
+        Stats stats = stats(command);
+        if (spawnNanos >= 0) {
+            stats.spawn.record(spawnNanos);
+        }
+        stats.run.record(runNanos);
+        stats.bytesRead.add(bytesRead);
+        stats.exitCodes.computeIfAbsent(exitCode, code -> new LongAdder()).increment();
+    }
+
+    public CommandStatsMXBean get(String command) {
+        return commands.get(command);
+    }
+
+    // One line per command, slowest p99 first
+    public String dump() {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        out.printf("# %s%n", LocalDateTime.now());
+        out.printf("%-24s %9s %6s %9s %9s %9s %9s %9s %9s %9s %12s %s%n", "command", "count", "fail", "mean ms",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms", "spawn p99", "run p99", "bytes", "exit codes");
+        commands.entrySet().stream()
+                .sorted((a, b) -> Double.compare(b.getValue().getP99Millis(), a.getValue().getP99Millis()))
+                .forEach(entry -> {
+                    Stats stats = entry.getValue();
+                    out.printf("%-24s %9d %6d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %12d %s%n", entry.getKey(),
+                            stats.getCount(), stats.getFailures(), stats.getMeanMillis(), stats.getP50Millis(),
+                            stats.getP99Millis(), stats.getP999Millis(), stats.getMaxMillis(),
+                            stats.getSpawnP99Millis(), stats.getRunP99Millis(), stats.getBytesRead(),
+                            stats.getExitCodes());
+                });
+        out.flush();
+        return text.toString();
+    }
+
+    public void dumpEvery(long seconds, String file) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            if (commands.isEmpty()) {
+                return;
+            }
+            if (file == null || file.isEmpty()) {
+                System.err.print(dump());
+                return;
+            }
+            try (FileWriter writer = new FileWriter(file, true)) {
+                writer.write(dump());
+            } catch (IOException e) {
+                System.err.println("Error: could not write metrics to " + file + ": " + e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private Stats stats(String command) {
+        Stats stats = commands.get(command);
+        if (stats == null) {
+            stats = commands.computeIfAbsent(command, this::register);
+        }
+        return stats;
+    }
+
+    private Stats register(String command) {
+        Stats stats = new Stats();
+        if (server != null) {
+            try {
+                server.registerMBean(stats, new ObjectName(DOMAIN + ":type=CommandStats,name=" + ObjectName.quote(command)));
+            } catch (JMException e) {
+                System.err.println("Error: could not register metrics for " + command + ": " + e.getMessage());
+            }
+        }
+        return stats;
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    static final class Stats implements CommandStatsMXBean {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram spawn = new LatencyHistogram();
+        final LatencyHistogram run = new LatencyHistogram();
+        final LongAdder failures = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final Map<Integer, LongAdder> exitCodes = new ConcurrentHashMap<>();
+
+        @Override public long getCount() { return latency.getCount(); }
+        @Override public long getFailures() { return failures.sum(); }
+        @Override public double getMeanMillis() { return millis(latency.getMean()); }
+        @Override public double getP50Millis() { return millis(latency.percentile(50)); }
+        @Override public double getP90Millis() { return millis(latency.percentile(90)); }
+        @Override public double getP99Millis() { return millis(latency.percentile(99)); }
+        @Override public double getP999Millis() { return millis(latency.percentile(99.9)); }
+        @Override public double getMaxMillis() { return millis(latency.getMax()); }
+        @Override public double getSpawnP99Millis() { return millis(spawn.percentile(99)); }
+        @Override public double getRunP99Millis() { return millis(run.percentile(99)); }
+        @Override public long getScriptCalls() { return run.getCount(); }
+        @Override public long getBytesRead() { return bytesRead.sum(); }
+
+        @Override
+        public Map<Integer, Long> getExitCodes() {
+            Map<Integer, Long> codes = new TreeMap<>();
+            exitCodes.forEach((code, count) -> codes.put(code, count.sum()));
+            return codes;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package Model;
+
+import java.util.Map;
+
+// JMX view of one backend command, registered as gahinga:type=CommandStats,name=<command>.
+// Latencies are in milliseconds and cumulative since the JVM started.
+public interface CommandStatsMXBean {
+    long getCount();
+
+    // Calls that failed or answered with a system error; non-zero script exits show up in getExitCodes()
+    long getFailures();
+
+    double getMeanMillis();
+    double getP50Millis();
+    double getP90Millis();
+    double getP99Millis();
+    double getP999Millis();
+    double getMaxMillis();
+
+    // Getting a process: fork/exec of a one-off child, or waiting for (and maybe starting) a pooled worker
+    double getSpawnP99Millis();
+
+    // From having the process to having its whole reply
+    double getRunP99Millis();
+
+    long getScriptCalls();
+    long getBytesRead();
+    Map<Integer, Long> getExitCodes();
+}
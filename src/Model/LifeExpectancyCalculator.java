@@ -0,0 +1,79 @@
+package Model;
+
+import Storage.LifeExpectancyTable;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+// Remaining years and demise date for a patient, shared by registration, profile edits and the patient menu.
+// Remaining years start from the country's life expectancy minus the age in calendar years. HIV-positive patients
+// lose 10% for the year of diagnosis and for every year until ART starts (today when not on ART yet), rounded up.
+// Everyone else gets the remainder rounded down.
+public final class LifeExpectancyCalculator {
+    public static final double ART_DELAY_DECAY = 0.9;
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private LifeExpectancyCalculator() {}
+
+    public static int remainingYears(double countryLifespan, int birthYear, boolean hivPositive,
+                                     int infectionYear, int artStartYear, int currentYear) {
+        double remaining = countryLifespan - (currentYear - birthYear);
+        if (!hivPositive) {
+            return (int) remaining;
+        }
+        int decaySteps = Math.max(0, artStartYear - infectionYear + 1);
+        remaining *= Math.pow(ART_DELAY_DECAY, decaySteps);
+        // Round up to the next full year
+        return (int) (remaining + 0.999999999);
+    }
+
+    public static int remainingYears(double countryLifespan, LocalDate dateOfBirth, boolean hivPositive,
+                                     LocalDate dateOfInfection, LocalDate startARTDate, LocalDate today) {
+        int currentYear = today.getYear();
+        return remainingYears(countryLifespan, dateOfBirth.getYear(), hivPositive,
+                dateOfInfection != null ? dateOfInfection.getYear() : currentYear,
+                startARTDate != null ? startARTDate.getYear() : currentYear,
+                currentYear);
+    }
+
+    public static LocalDate demiseDate(int remainingYears, LocalDate today) {
+        return today.plusYears(remainingYears);
+    }
+
+    // Batch entry point: fills remainingYears[i] for patients[i] in one pass, UNKNOWN for an unknown
+    // country or a missing date of birth, and sets each patient's demise date.
+    public static void computeAll(Patient[] patients, LifeExpectancyTable table, LocalDate today, int[] remainingYears) {
+        if (remainingYears.length < patients.length) {
+            throw new IllegalArgumentException("remainingYears is shorter than patients");
+        }
+        int currentYear = today.getYear();
+        for (int i = 0; i < patients.length; i++) {
+            Patient patient = patients[i];
+            double lifespan = patient.getCountry() != null ? table.lookup(patient.getCountry()) : Double.NaN;
+            if (Double.isNaN(lifespan) || patient.getDateOfBirth() == null) {
+                remainingYears[i] = UNKNOWN;
+                continue;
+            }
+            int years = remainingYears(lifespan, yearOf(patient.getDateOfBirth(), currentYear),
+                    patient.getIsHivPositive(),
+                    yearOf(patient.getDateOfInfection(), currentYear),
+                    yearOf(patient.getStartARTDate(), currentYear),
+                    currentYear);
+            remainingYears[i] = years;
+            patient.setDemiseDate(toDate(demiseDate(years, today)));
+        }
+    }
+
+    static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    static Date toDate(LocalDate date) {
+        return date == null ? null : Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static int yearOf(Date date, int fallback) {
+        return date == null ? fallback : toLocalDate(date).getYear();
+    }
+}
@@ -1,16 +1,16 @@
 package Model;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import Storage.LifeExpectancyTable;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.Scanner;
 
 public class Patient extends User {
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    // DateTimeFormatter is immutable, so one instance is safe to share between threads
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
     private Date dateOfBirth;
     private boolean isHivPositive;
     private Date dateOfInfection;
@@ -59,108 +59,149 @@ public class Patient extends User {
     public void setDemiseDate(Date demiseDate) { this.demiseDate = demiseDate; }
 
     public void modifyProfile() {
+        if (!checkSession()) {
+            return;
+        }
         // Display current profile information
-        System.out.println("Current Profile Information:");
+        Terminal.out().println("Current Profile Information:");
         viewProfile();  // Assuming viewProfile prints the current profile information
     
         // Prompt for new details
-        Scanner scanner = new Scanner(System.in);
+        Scanner scanner = Terminal.in();
     
-        System.out.print("Enter new first name (or press Enter to keep current): ");
+        Terminal.out().print("Enter new first name (or press Enter to keep current): ");
         String firstName = scanner.nextLine();
         if (firstName.isEmpty()) {
             firstName = getFirstName();
         }
     
-        System.out.print("Enter new last name (or press Enter to keep current): ");
+        Terminal.out().print("Enter new last name (or press Enter to keep current): ");
         String lastName = scanner.nextLine();
         if (lastName.isEmpty()) {
             lastName = getLastName();
         }
     
-        System.out.print("Enter new date of birth (yyyy-MM-dd) or press Enter to keep current: ");
+        Terminal.out().print("Enter new date of birth (yyyy-MM-dd) or press Enter to keep current: ");
         String dobString = scanner.nextLine();
         Date dateOfBirth = dobString.isEmpty() ? getDateOfBirth() : parseDate(dobString);
     
-        System.out.print("Is HIV Positive (true/false) or press Enter to keep current: ");
+        Terminal.out().print("Is HIV Positive (true/false) or press Enter to keep current: ");
         String hivPositiveString = scanner.nextLine();
         boolean isHivPositive = hivPositiveString.isEmpty() ? getIsHivPositive() : Boolean.parseBoolean(hivPositiveString);
     
-        System.out.print("Enter new date of infection (yyyy-MM-dd) or press Enter to keep current: ");
+        Terminal.out().print("Enter new date of infection (yyyy-MM-dd) or press Enter to keep current: ");
         String doiString = scanner.nextLine();
         Date dateOfInfection = doiString.isEmpty() ? getDateOfInfection() : parseDate(doiString);
     
-        System.out.print("On ART Drugs (true/false) or press Enter to keep current: ");
+        Terminal.out().print("On ART Drugs (true/false) or press Enter to keep current: ");
         String onARTDrugsString = scanner.nextLine();
         boolean onARTDrugs = onARTDrugsString.isEmpty() ? getIsOnARTDrugs() : Boolean.parseBoolean(onARTDrugsString);
     
-        System.out.print("Enter new start ART date (yyyy-MM-dd) or press Enter to keep current: ");
+        Terminal.out().print("Enter new start ART date (yyyy-MM-dd) or press Enter to keep current: ");
         String artStartDateString = scanner.nextLine();
         Date startARTDate = artStartDateString.isEmpty() ? getStartARTDate() : parseDate(artStartDateString);
     
-        System.out.print("Enter new country or press Enter to keep current: ");
+        Terminal.out().print("Enter new country or press Enter to keep current: ");
         String country = scanner.nextLine();
         if (country.isEmpty()) {
             country = getCountry();
         }
     
         // Print the new user information for debugging
-        System.out.println("New User Information:");
-        System.out.println("First Name: " + firstName);
-        System.out.println("Last Name: " + lastName);
-        System.out.println("Date of Birth: " + (dateOfBirth != null ? DATE_FORMAT.format(dateOfBirth) : "Not changed"));
-        System.out.println("Is HIV Positive: " + isHivPositive);
-        System.out.println("Date of Infection: " + (dateOfInfection != null ? DATE_FORMAT.format(dateOfInfection) : "Not changed"));
-        System.out.println("On ART Drugs: " + onARTDrugs);
-        System.out.println("Start ART Date: " + (startARTDate != null ? DATE_FORMAT.format(startARTDate) : "Not changed"));
-        System.out.println("Country: " + country);
+        Terminal.out().println("New User Information:");
+        Terminal.out().println("First Name: " + firstName);
+        Terminal.out().println("Last Name: " + lastName);
+        Terminal.out().println("Date of Birth: " + (dateOfBirth != null ? formatDate(dateOfBirth) : "Not changed"));
+        Terminal.out().println("Is HIV Positive: " + isHivPositive);
+        Terminal.out().println("Date of Infection: " + (dateOfInfection != null ? formatDate(dateOfInfection) : "Not changed"));
+        Terminal.out().println("On ART Drugs: " + onARTDrugs);
+        Terminal.out().println("Start ART Date: " + (startARTDate != null ? formatDate(startARTDate) : "Not changed"));
+        Terminal.out().println("Country: " + country);
     
-        // Call the script to update the profile
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                executeScript(scriptPath, "modify-patient-profile", uuid, firstName, lastName, 
-                              dateOfBirth != null ? DATE_FORMAT.format(dateOfBirth) : "", 
-                              String.valueOf(isHivPositive), 
-                              dateOfInfection != null ? DATE_FORMAT.format(dateOfInfection) : "", 
-                              String.valueOf(onARTDrugs), 
-                              startARTDate != null ? DATE_FORMAT.format(startARTDate) : "", 
-                              country);
-                System.out.println("Profile updated successfully.");
-            } else {
-                System.out.println("Script not found.");
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // Call the backend to update the profile
+        String response = backend().execute("modify-patient-profile", uuid, firstName, lastName,
+                dateOfBirth != null ? formatDate(dateOfBirth) : "",
+                String.valueOf(isHivPositive),
+                dateOfInfection != null ? formatDate(dateOfInfection) : "",
+                String.valueOf(onARTDrugs),
+                startARTDate != null ? formatDate(startARTDate) : "",
+                country);
+        Audit.record(Audit.MODIFY_PROFILE, response.startsWith("Patient profile updated"), 1, getEmail(), uuid);
+        Terminal.out().println(response);
     }
     
 
     private Date parseDate(String dateString) {
         try {
-            return DATE_FORMAT.parse(dateString);
-        } catch (ParseException e) {
-            System.out.println("Invalid date format. Please enter date in yyyy-MM-dd format.");
+            return LifeExpectancyCalculator.toDate(LocalDate.parse(dateString, DATE_FORMAT));
+        } catch (DateTimeParseException e) {
+            Terminal.out().println("Invalid date format. Please enter date in yyyy-MM-dd format.");
             return null;
         }
     }
 
+    static String formatDate(Date date) {
+        return DATE_FORMAT.format(LifeExpectancyCalculator.toLocalDate(date));
+    }
+
     public void viewProfile() {
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                String response = executeScript(scriptPath, "view-profile", uuid);
-                System.out.println(response);
-            } else {
-                System.out.println("Script not found.");
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (!checkSession()) {
+            return;
         }
+        String response = backend().execute("view-profile", uuid);
+        Terminal.out().println(response);
     }
 
     public void computeLifeExpectancy() {
-        // Implementation
+        if (!checkSession()) {
+            return;
+        }
+        if ((dateOfBirth == null || country == null || country.isEmpty()) && !loadProfile()) {
+            return;
+        }
+        LifeExpectancyTable table = Backends.lifeExpectancies();
+        double lifespan = table != null ? table.lookup(country) : Double.NaN;
+        if (Double.isNaN(lifespan)) {
+            Terminal.out().println("Invalid country code");
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        int remainingYears = LifeExpectancyCalculator.remainingYears(lifespan,
+                LifeExpectancyCalculator.toLocalDate(dateOfBirth), isHivPositive,
+                LifeExpectancyCalculator.toLocalDate(dateOfInfection),
+                LifeExpectancyCalculator.toLocalDate(startARTDate), today);
+        demiseDate = LifeExpectancyCalculator.toDate(LifeExpectancyCalculator.demiseDate(remainingYears, today));
+        Terminal.out().println("Expected lifespan: " + remainingYears + " years");
+        Terminal.out().println("Expected demise date: " + formatDate(demiseDate));
+    }
+
+    // Fills this patient from the view-profile reply; false (after printing the reply) when there is no profile
+    public boolean loadProfile() {
+        String response = backend().execute("view-profile", uuid);
+        if (!response.startsWith("First Name: ")) {
+            Terminal.out().println(response);
+            return false;
+        }
+        for (String line : response.split("\n")) {
+            int separator = line.indexOf(": ");
+            if (separator < 0) {
+                continue;
+            }
+            String value = line.substring(separator + 2).trim();
+            switch (line.substring(0, separator)) {
+                case "First Name": setFirstName(value); break;
+                case "Last Name": setLastName(value); break;
+                case "Date of Birth": dateOfBirth = value.isEmpty() ? null : parseDate(value); break;
+                case "Is HIV Positive": isHivPositive = Boolean.parseBoolean(value); break;
+                case "Date of Infection": dateOfInfection = value.isEmpty() ? null : parseDate(value); break;
+                case "On ART Drugs": onARTDrugs = Boolean.parseBoolean(value); break;
+                case "Date of start ART": startARTDate = value.isEmpty() ? null : parseDate(value); break;
+                case "Country": country = value; break;
+                case "Demise Date": demiseDate = value.isEmpty() ? null : parseDate(value); break;
+                default: break;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -169,18 +210,7 @@ public class Patient extends User {
     }
 
     public String completeRegistration() {
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                String response = executeScript(scriptPath, "complete-registration", uuid, getFirstName(), getLastName(), new SimpleDateFormat("yyyy-MM-dd").format(dateOfBirth), String.valueOf(isHivPositive), dateOfInfection != null ? new SimpleDateFormat("yyyy-MM-dd").format(dateOfInfection) : "", String.valueOf(onARTDrugs), startARTDate != null ? new SimpleDateFormat("yyyy-MM-dd").format(startARTDate) : "", country, getPassword());
-                return response;
-            } else {
-                return "Script not found.";
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "Error completing registration.";
-        }
+        return backend().execute("complete-registration", uuid, getFirstName(), getLastName(), formatDate(dateOfBirth), String.valueOf(isHivPositive), dateOfInfection != null ? formatDate(dateOfInfection) : "", String.valueOf(onARTDrugs), startARTDate != null ? formatDate(startARTDate) : "", country, getPassword());
     }
 
     @Override
@@ -200,59 +230,4 @@ public class Patient extends User {
                 ", demiseDate=" + demiseDate +
                 '}';
     }
-
-    // Method to find the script path
-    public String findScript(String scriptName) throws IOException {
-        File currentDir = new File(".");
-        return searchForScript(currentDir, scriptName);
-    }
-
-    private String searchForScript(File directory, String scriptName) throws IOException {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    String result = searchForScript(file, scriptName);
-                    if (result != null) {
-                        return result;
-                    }
-                } else if (file.getName().equals(scriptName)) {
-                    return file.getCanonicalPath();
-                }
-            }
-        }
-        return null;
-    }
-
-    public static String executeScript(String... command) {
-        StringBuilder response = new StringBuilder();
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        
-        try {
-            Process process = processBuilder.start();
-            
-            // Capture output from the script
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line).append(System.lineSeparator());
-            }
-
-            // Capture errors from the script
-            BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            while ((line = errorReader.readLine()) != null) {
-                response.append(line).append(System.lineSeparator());
-            }
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                response.append("Script exited with error code: ").append(exitCode).append(System.lineSeparator());
-            }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return "Error executing script.";
-        }
-        
-        return response.toString();
-    }
 }
@@ -0,0 +1,85 @@
+package Model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU cache of view-profile replies by UUID, so a patient who views the profile again does not fork
+// the script again. Holds at most -Dgahinga.profileCache.size entries (default 10000, 0 disables it).
+// Entries are dropped when a write for the UUID goes through this JVM; writes made outside it are not seen.
+public final class ProfileCache {
+    public static final String SIZE_PROPERTY = "gahinga.profileCache.size";
+
+    private final int capacity;
+    private final LinkedHashMap<String, String> profiles;
+    // Bumped by every invalidation, so a reply read before a write cannot be cached after it
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ProfileCache(int capacity) {
+        this.capacity = capacity;
+        this.profiles = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > ProfileCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static ProfileCache fromProperties() {
+        return new ProfileCache(Math.max(0, Integer.getInteger(SIZE_PROPERTY, 10_000)));
+    }
+
+    // The cached reply, or null; counts the hit or miss
+    public synchronized String get(String uuid) {
+        String profile = profiles.get(uuid);
+        if (profile != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return profile;
+    }
+
+    // Version to hand back to put() once the reply is read
+    public synchronized long version() {
+        return version;
+    }
+
+    // Caches the reply unless something was invalidated since version() was taken
+    public synchronized void put(String uuid, String profile, long readVersion) {
+        if (capacity > 0 && readVersion == version) {
+            profiles.put(uuid, profile);
+        }
+    }
+
+    public synchronized void invalidate(String uuid) {
+        version++;
+        profiles.remove(uuid);
+    }
+
+    public synchronized void clear() {
+        version++;
+        profiles.clear();
+    }
+
+    public synchronized int size() {
+        return profiles.size();
+    }
+
+    public int getCapacity() { return capacity; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    @Override
+    public synchronized String toString() {
+        return "ProfileCache{size=" + profiles.size() + ", capacity=" + capacity + ", hits=" + hits +
+                ", misses=" + misses + ", evictions=" + evictions + '}';
+    }
+}
@@ -0,0 +1,47 @@
+package Model;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped locks for the read-check-write sequences of the store backend, keyed by UUID or email. Writers of
+// different records almost always land on different stripes and run in parallel; writers of the same record
+// queue up, so none of them writes back a copy another one has already replaced. Bulk operations that touch
+// records they cannot name up front take every stripe. The stripe count is -Dgahinga.store.lockStripes
+// (default 256), rounded up to a power of two.
+public final class RecordLocks {
+    public static final String STRIPES_PROPERTY = "gahinga.store.lockStripes";
+
+    private final ReentrantLock[] stripes;
+
+    public RecordLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[stripes <= 1 ? 1 : size];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public static RecordLocks fromProperties() {
+        return new RecordLocks(Integer.getInteger(STRIPES_PROPERTY, 256));
+    }
+
+    public ReentrantLock forKey(String key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as HashMap does, since the index only uses the low ones
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    // Always in index order, so two bulk operations cannot deadlock on each other or on single-key holders
+    public void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    public void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    public int getStripes() { return stripes.length; }
+}
@@ -0,0 +1,333 @@
+package Model;
+
+import Storage.UserFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Compatibility backend: runs the commands through user-manager.sh, by default on a pool of warm workers
+public class ScriptBackend implements Backend {
+    private static final String NOT_INITIATED = "User was not initiated";
+    private static final String INVALID_UUID = "Invalid or already registered UUID.";
+    private static final String EMAIL_NOT_FOUND = "Login failed. Email not found.";
+    private static final String INITIATED = "Registration initiated. Use the following UUID to complete registration: ";
+    private static final String NEW_EMAIL = "--new-email";
+    // initiate-registration's replies that leave the store as it was
+    private static final Set<String> NOT_INITIATED_REPLIES = Set.of("UUID not found.", "Access denied.",
+            "Invalid email format.", "Email already registered.");
+
+    // Commands that write the stores under the script's lock; initiate-registration is the only one adding keys
+    private static final Set<String> STORE_WRITES = Set.of("initiate-registration", "complete-registration", "login",
+            "logout", "modify-patient-profile");
+
+    // Commands that change the profile view-profile shows for their first argument
+    private static final Set<String> PROFILE_WRITES = Set.of("modify-patient-profile", "complete-registration");
+    private static final String PROFILE_PREFIX = "First Name: ";
+
+    private final CommandMetrics metrics = CommandMetrics.getDefault();
+    private final ProfileCache profiles = ProfileCache.fromProperties();
+    // Emails and UUIDs of user-store.txt, so lookups of unknown keys are answered without a fork
+    private final Object filterLock = new Object();
+    private UserFilter userFilter;
+    // This JVM's store writes still running, and whether the file has changed only through them since the filter
+    // last matched it; while it has, the filter is kept up to date here instead of being rebuilt
+    private int ownWrites;
+    private boolean ownWritesOnly;
+    // Emails initiated with --new-email and not yet added to the filter
+    private final Set<String> initiating = new HashSet<>();
+    private final AtomicBoolean saving = new AtomicBoolean();
+
+    private static final ExecutorService FILTER_WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-filter-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public String execute(String command, String... args) {
+        long start = System.nanoTime();
+        String response = null;
+        try {
+            response = dispatch(command, args);
+            return response;
+        } finally {
+            metrics.recordReply(command, System.nanoTime() - start, response);
+        }
+    }
+
+    private String dispatch(String command, String... args) {
+        String miss = answerMiss(command, args);
+        if (miss != null) {
+            return miss;
+        }
+        if (command.equals("view-profile") && args.length == 1) {
+            return viewProfile(args[0]);
+        }
+        boolean profileWrite = PROFILE_WRITES.contains(command) && args.length > 0;
+        if (profileWrite) {
+            // Before the write so a view-profile already running cannot cache the old reply
+            profiles.invalidate(args[0]);
+        }
+        String response;
+        if (STORE_WRITES.contains(command)) {
+            String[] scriptArgs = beginStoreWrite(command, args);
+            response = null;
+            try {
+                response = run(command, scriptArgs);
+            } finally {
+                endStoreWrite(command, args, response);
+            }
+        } else {
+            response = run(command, args);
+            if (command.equals("initialize-user-store")) {
+                forgetOwnWrites();
+            }
+        }
+        if (profileWrite) {
+            // Also after it, for a view that read the file before the write replaced it; failed writes change
+            // nothing, but dropping the entry costs only one fork
+            profiles.invalidate(args[0]);
+        }
+        // The script keeps its own is_logged_in flag; the Java layer tracks sessions the same way for both backends
+        if (command.equals("login") && args.length == 2
+                && (response.startsWith("ADMIN,") || response.startsWith("PATIENT,"))) {
+            String[] parts = response.split(",");
+            SessionManager.Session session =
+                    SessionManager.getDefault().open(parts[1], args[0], UserRole.valueOf(parts[0]));
+            return response + "," + session.getToken();
+        }
+        return response;
+    }
+
+    // The Storage directory the script works on ($SCRIPT_DIR/../Storage), or null when there is no script
+    public Path getStorageDir() throws IOException {
+        String scriptPath = ScriptLocator.forName(ScriptLocator.USER_MANAGER).locate();
+        if (scriptPath == null) {
+            return null;
+        }
+        return Paths.get(scriptPath).toRealPath().getParent().resolve("../Storage").normalize();
+    }
+
+    // Serves repeated views from the cache; only full profiles are cached, and only while the user is logged in,
+    // which is what the script checks before showing one
+    private String viewProfile(String uuid) {
+        if (SessionManager.getDefault().isLoggedIn(uuid)) {
+            String cached = profiles.get(uuid);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long version = profiles.version();
+        String response = run("view-profile", uuid);
+        if (response.startsWith(PROFILE_PREFIX)) {
+            profiles.put(uuid, response, version);
+        }
+        return response;
+    }
+
+    public ProfileCache getProfileCache() {
+        return profiles;
+    }
+
+    // The script's reply when the filter proves the UUID or login email was never stored, else null.
+    // initiate-registration has to run anyway to write the new user; beginStoreWrite() spares it the duplicate check.
+    private String answerMiss(String command, String[] args) {
+        boolean validate = command.equals("validate-uuid") && args.length == 1;
+        boolean complete = command.equals("complete-registration") && args.length == 10;
+        boolean login = command.equals("login") && args.length == 2;
+        if (!validate && !complete && !login) {
+            return null;
+        }
+        UserFilter filter = currentFilter();
+        if (login) {
+            // An empty store gets the script's own reply
+            return filter == null || filter.size() == 0 || filter.mightContainEmail(args[0]) ? null : EMAIL_NOT_FOUND;
+        }
+        if (filter == null || filter.mightContainUuid(args[0])) {
+            return null;
+        }
+        return validate ? INVALID_UUID : NOT_INITIATED;
+    }
+
+    // The filter of user-store.txt as it is now; null without a store. While only this JVM's writes have changed
+    // the file the filter is up to date already. Any other change rebuilds it, since only a scan of the new file is
+    // sure to hold every key.
+    private UserFilter currentFilter() {
+        synchronized (filterLock) {
+            if (ownWrites > 0 && ownWritesOnly) {
+                return userFilter;
+            }
+            try {
+                Path store = getUserStoreFile();
+                if (store == null || !Files.exists(store)) {
+                    return null;
+                }
+                if (userFilter == null || !userFilter.isCurrent(store)) {
+                    userFilter = UserFilter.loadOrBuild(store);
+                }
+                return userFilter;
+            } catch (IOException e) {
+                System.err.println("Error: user filter unavailable: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    // Called before a store write runs; returns the arguments to run it with. The first of overlapping writes
+    // starts from a filter that matches the file. initiate-registration gets --new-email when the filter proves
+    // the email unused and no other initiation of it is running, so the script skips its duplicate grep.
+    private String[] beginStoreWrite(String command, String[] args) {
+        synchronized (filterLock) {
+            UserFilter filter = currentFilter();
+            if (ownWrites++ == 0) {
+                ownWritesOnly = filter != null;
+            }
+            if (command.equals("initiate-registration") && args.length == 2 && ownWritesOnly
+                    && !filter.mightContainEmail(args[1]) && initiating.add(args[1])) {
+                return new String[] {args[0], args[1], NEW_EMAIL};
+            }
+            return args;
+        }
+    }
+
+    // Adds what an initiation stored to the filter. Once the last overlapping write is done the filter is stamped
+    // with the file as it is now and saved in the background, so the next check finds it current without a scan.
+    // A change another process makes while one of ours runs is taken as ours; it is picked up at its next change.
+    private void endStoreWrite(String command, String[] args, String response) {
+        synchronized (filterLock) {
+            if (command.equals("initiate-registration") && args.length == 2) {
+                initiating.remove(args[1]);
+                if (userFilter != null && response != null && response.startsWith(INITIATED)) {
+                    userFilter.add(args[1], response.substring(INITIATED.length()).trim());
+                } else if (response == null || !NOT_INITIATED_REPLIES.contains(response)) {
+                    // Killed or failed part way: the line may be in the file with a UUID nobody saw
+                    ownWritesOnly = false;
+                }
+            }
+            if (--ownWrites > 0 || !ownWritesOnly) {
+                return;
+            }
+            try {
+                Path store = getUserStoreFile();
+                if (store != null && Files.exists(store)) {
+                    userFilter.stamp(store);
+                    save(store);
+                }
+            } catch (IOException e) {
+                // Left unstamped, the next check rebuilds it
+                System.err.println("Error: user filter not updated: " + e.getMessage());
+            }
+        }
+    }
+
+    // A store write the filter cannot follow; the writes still running must not stamp over it
+    private void forgetOwnWrites() {
+        synchronized (filterLock) {
+            ownWritesOnly = false;
+        }
+    }
+
+    // One save queued at a time; it writes whatever the filter holds when it runs
+    private void save(Path store) {
+        if (!saving.compareAndSet(false, true)) {
+            return;
+        }
+        FILTER_WRITER.execute(() -> {
+            saving.set(false);
+            UserFilter filter;
+            synchronized (filterLock) {
+                filter = userFilter;
+            }
+            try {
+                filter.write(store);
+            } catch (IOException e) {
+                System.err.println("Error: could not save the user filter: " + e.getMessage());
+            }
+        });
+    }
+
+    private Path getUserStoreFile() throws IOException {
+        Path storageDir = getStorageDir();
+        return storageDir == null ? null : storageDir.resolve("user-store.txt");
+    }
+
+    private String run(String command, String... args) {
+        try {
+            String scriptPath = ScriptLocator.forName(ScriptLocator.USER_MANAGER).locate();
+            if (scriptPath == null) {
+                return "Script not found.";
+            }
+            if (ScriptWorkerPool.configuredWorkers() > 0) {
+                ScriptWorkerPool.Reply reply = ScriptWorkerPool.forScript(scriptPath).execute(command, args);
+                metrics.recordScript(CommandMetrics.nameOf(command, reply.getOutput()), reply.getSpawnNanos(),
+                        reply.getRunNanos(), reply.getBytesRead(), reply.getExitCode());
+                String response = reply.getOutput();
+                if (reply.getExitCode() != 0) {
+                    response += "\nScript exited with error code: " + reply.getExitCode();
+                }
+                return response.trim();
+            }
+            // -Dgahinga.script.workers=0 forks the script for every command
+            String[] commandLine = new String[args.length + 2];
+            commandLine[0] = scriptPath;
+            commandLine[1] = command;
+            System.arraycopy(args, 0, commandLine, 2, args.length);
+            ScriptResult result;
+            try {
+                result = ScriptExecutor.getDefault().run(commandLine);
+            } catch (IOException e) {
+                // The console's long-standing answer to a script that could not be run
+                e.printStackTrace();
+                return ("An error occurred: " + e.getMessage()).trim();
+            }
+            metrics.recordScript(CommandMetrics.nameOf(command, result.getStdout()), result.getSpawnNanos(),
+                    result.getRunNanos(), result.getBytesRead(), result.getExitCode());
+            return User.describe(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "System error, please contact the administrator";
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "System error, please contact the administrator";
+        }
+    }
+
+    @Override
+    public void stream(LineSink lines, String command, String... args) throws IOException {
+        String scriptPath = ScriptLocator.forName(ScriptLocator.USER_MANAGER).locate();
+        if (scriptPath == null) {
+            throw new IOException("Script not found.");
+        }
+        String[] commandLine = new String[args.length + 2];
+        commandLine[0] = scriptPath;
+        commandLine[1] = command;
+        System.arraycopy(args, 0, commandLine, 2, args.length);
+        long start = System.nanoTime();
+        long[] bytes = new long[1];
+        boolean failed = true;
+        try {
+            // A one-off child, so rows reach the sink as the script prints them
+            int exitCode = ScriptExecutor.getDefault().stream(line -> {
+                bytes[0] += line.length() + 1;
+                lines.accept(line);
+            }, commandLine);
+            metrics.recordScript(command, -1, System.nanoTime() - start, bytes[0], exitCode);
+            if (exitCode != 0) {
+                throw new IOException("Script exited with error code: " + exitCode);
+            }
+            failed = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming " + command, e);
+        } finally {
+            metrics.record(command, System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package Model;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs child processes asynchronously.
+// stdout and stderr are drained at the same time so neither pipe can fill up, every command gets a deadline
+// (-Dgahinga.script.timeoutMillis, default 30000) and at most -Dgahinga.script.maxProcesses children run at once
+// (default: number of cores). Extra commands wait in a queue instead of holding a thread.
+public final class ScriptExecutor {
+    public static final String TIMEOUT_PROPERTY = "gahinga.script.timeoutMillis";
+    public static final String MAX_PROCESSES_PROPERTY = "gahinga.script.maxProcesses";
+
+    private static volatile ScriptExecutor defaultExecutor;
+
+    private final long defaultTimeoutMillis;
+    private final Semaphore permits;
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService streamReaders = Executors.newCachedThreadPool(daemonThreads("script-stream"));
+    private final ScheduledExecutorService deadlines =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("script-deadline"));
+
+    public ScriptExecutor(int maxProcesses, long defaultTimeoutMillis) {
+        if (maxProcesses < 1) {
+            throw new IllegalArgumentException("maxProcesses must be at least 1");
+        }
+        this.permits = new Semaphore(maxProcesses);
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    public static ScriptExecutor getDefault() {
+        ScriptExecutor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (ScriptExecutor.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = new ScriptExecutor(
+                            Integer.getInteger(MAX_PROCESSES_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                            Long.getLong(TIMEOUT_PROPERTY, 30_000L));
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public long getDefaultTimeoutMillis() { return defaultTimeoutMillis; }
+
+    public CompletableFuture<ScriptResult> submit(String... command) {
+        return submit(defaultTimeoutMillis, command);
+    }
+
+    public CompletableFuture<ScriptResult> submit(long timeoutMillis, String... command) {
+        Task task = new Task(command, timeoutMillis);
+        pending.add(task);
+        dispatch();
+        return task.future;
+    }
+
+    // Blocking convenience for the console code paths
+    public ScriptResult run(String... command) throws IOException, InterruptedException {
+        try {
+            return submit(command).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Runs the command and hands its stdout to lines as it arrives; stderr goes to the console.
+    // Counts against the same process cap and deadline as submit().
+    public int stream(Backend.LineSink lines, String... command) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            process.getOutputStream().close();
+            AtomicBoolean timedOut = new AtomicBoolean();
+            ScheduledFuture<?> killer = deadline(() -> {
+                timedOut.set(true);
+                kill(process);
+            }, defaultTimeoutMillis);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.accept(line);
+                }
+            } catch (IOException | RuntimeException e) {
+                kill(process);
+                if (timedOut.get()) {
+                    throw new IOException("Script timed out", e);
+                }
+                throw e;
+            } finally {
+                killer.cancel(false);
+            }
+            int exitCode = process.waitFor();
+            if (timedOut.get()) {
+                throw new IOException("Script timed out");
+            }
+            return exitCode;
+        } finally {
+            release();
+        }
+    }
+
+    // Runs the action once the deadline passes unless the returned future is cancelled first
+    ScheduledFuture<?> deadline(Runnable action, long timeoutMillis) {
+        return deadlines.schedule(action, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Task task = pending.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            start(task);
+        }
+    }
+
+    private void start(Task task) {
+        Process process;
+        long spawnStart = System.nanoTime();
+        try {
+            process = new ProcessBuilder(task.command).start();
+        } catch (IOException e) {
+            release();
+            task.future.completeExceptionally(e);
+            return;
+        }
+        long started = System.nanoTime();
+        long spawnNanos = started - spawnStart;
+        try {
+            // Scripts never read stdin; closing it lets anything that tries see EOF instead of hanging
+            process.getOutputStream().close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+
+        CompletableFuture<byte[]> stdout =
+                CompletableFuture.supplyAsync(() -> readAll(process.getInputStream()), streamReaders);
+        CompletableFuture<byte[]> stderr =
+                CompletableFuture.supplyAsync(() -> readAll(process.getErrorStream()), streamReaders);
+
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> killer = deadline(() -> {
+            timedOut.set(true);
+            kill(process);
+        }, task.timeoutMillis);
+
+        process.onExit()
+                .thenCombine(stdout, (exited, out) -> out)
+                .thenCombine(stderr, (out, err) -> new ScriptResult(process.exitValue(),
+                        new String(out, StandardCharsets.UTF_8), new String(err, StandardCharsets.UTF_8),
+                        timedOut.get(), spawnNanos, System.nanoTime() - started, out.length + err.length))
+                .whenComplete((result, failure) -> {
+                    killer.cancel(false);
+                    release();
+                    if (failure != null) {
+                        task.future.completeExceptionally(
+                                failure instanceof CompletionException ? failure.getCause() : failure);
+                    } else {
+                        task.future.complete(result);
+                    }
+                });
+    }
+
+    // Kills the script and whatever it started (date, bc, awk ...), then closes the pipes, so a grandchild
+    // still holding stdout or stderr cannot keep the readers waiting past the deadline
+    static void kill(Process process) {
+        // Taken before the parent dies; its orphans would no longer count as descendants
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        closeQuietly(process.getInputStream());
+        closeQuietly(process.getErrorStream());
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    private void release() {
+        permits.release();
+        dispatch();
+    }
+
+    private static byte[] readAll(InputStream stream) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream in = stream) {
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, n);
+            }
+        } catch (IOException e) {
+            // The process was killed mid-read; keep what arrived
+        }
+        return buffer.toByteArray();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Task {
+        final String[] command;
+        final long timeoutMillis;
+        final CompletableFuture<ScriptResult> future = new CompletableFuture<>();
+
+        Task(String[] command, long timeoutMillis) {
+            this.command = command;
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package Model;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Resolves a script once and caches the path.
+// Lookup order: -Dgahinga.script.path, the classpath (/Bash/<name>), then a single walk of the working directory.
+// The script's directory is watched, and the cache is dropped when the script is moved, deleted or replaced.
+// A failed lookup is remembered too, until invalidate() or for -Dgahinga.script.missMillis (default 5 seconds),
+// so callers asking before every command do not walk the working directory each time.
+public final class ScriptLocator {
+    public static final String SCRIPT_PATH_PROPERTY = "gahinga.script.path";
+    public static final String MISS_TTL_PROPERTY = "gahinga.script.missMillis";
+    public static final String USER_MANAGER = "user-manager.sh";
+
+    private static final Map<String, ScriptLocator> LOCATORS = new ConcurrentHashMap<>();
+
+    private final String scriptName;
+    private final long missTtlNanos;
+    private volatile String cached;
+    private volatile boolean missed;
+    private volatile long missedAt;
+    private WatchService watcher;
+
+    private ScriptLocator(String scriptName) {
+        this.scriptName = scriptName;
+        this.missTtlNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(MISS_TTL_PROPERTY, 5000L));
+    }
+
+    public static ScriptLocator forName(String scriptName) {
+        return LOCATORS.computeIfAbsent(scriptName, ScriptLocator::new);
+    }
+
+    // Canonical path of the script, or null when it cannot be found or is not executable
+    public String locate() throws IOException {
+        String path = cached;
+        if (path != null) {
+            return path;
+        }
+        if (isMissCached()) {
+            return null;
+        }
+        synchronized (this) {
+            if (cached == null) {
+                if (isMissCached()) {
+                    return null;
+                }
+                Path resolved = resolve();
+                if (resolved == null) {
+                    rememberMiss();
+                    return null;
+                }
+                if (!Files.isExecutable(resolved)) {
+                    System.err.println("Error: " + resolved + " is not executable");
+                    rememberMiss();
+                    return null;
+                }
+                cached = resolved.toRealPath().toString();
+                watch(resolved.toRealPath());
+            }
+            return cached;
+        }
+    }
+
+    private boolean isMissCached() {
+        return missed && System.nanoTime() - missedAt < missTtlNanos;
+    }
+
+    private void rememberMiss() {
+        missedAt = System.nanoTime();
+        missed = true;
+    }
+
+    public synchronized void invalidate() {
+        cached = null;
+        missed = false;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+            watcher = null;
+        }
+    }
+
+    private Path resolve() throws IOException {
+        String configured = System.getProperty(SCRIPT_PATH_PROPERTY);
+        if (configured != null && !configured.isEmpty() && USER_MANAGER.equals(scriptName)) {
+            Path path = Paths.get(configured);
+            return Files.isRegularFile(path) ? path : null;
+        }
+
+        URL resource = ScriptLocator.class.getResource("/Bash/" + scriptName);
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try {
+                return Paths.get(resource.toURI());
+            } catch (URISyntaxException ignored) {
+                // Fall back to the walk
+            }
+        }
+
+        Path[] found = new Path[1];
+        Files.walkFileTree(Paths.get("."), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && file.getFileName().toString().equals(scriptName)) {
+                    found[0] = file;
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Unreadable directories are skipped, as the old listFiles() walk did
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return found[0];
+    }
+
+    private void watch(Path script) {
+        Path directory = script.getParent();
+        try {
+            WatchService service = directory.getFileSystem().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watcher = service;
+            Thread thread = new Thread(() -> awaitChange(service, script.getFileName()), "script-locator-" + scriptName);
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            // No watching available; the cache then lives until invalidate() is called
+        }
+    }
+
+    private void awaitChange(WatchService service, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        synchronized (this) {
+                            if (watcher == service) {
+                                invalidate();
+                            }
+                        }
+                        return;
+                    }
+                }
+                if (!key.reset()) {
+                    // The directory itself went away
+                    synchronized (this) {
+                        if (watcher == service) {
+                            invalidate();
+                        }
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Invalidated or shutting down
+        }
+    }
+}
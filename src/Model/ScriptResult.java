@@ -0,0 +1,46 @@
+package Model;
+
+// Outcome of one script run
+public final class ScriptResult {
+    private final int exitCode;
+    private final String stdout;
+    private final String stderr;
+    private final boolean timedOut;
+    // Time to start the process, time from then until both streams closed, and bytes read from them
+    private final long spawnNanos;
+    private final long runNanos;
+    private final long bytesRead;
+
+    public ScriptResult(int exitCode, String stdout, String stderr, boolean timedOut) {
+        this(exitCode, stdout, stderr, timedOut, -1, -1, stdout.length() + stderr.length());
+    }
+
+    public ScriptResult(int exitCode, String stdout, String stderr, boolean timedOut,
+                        long spawnNanos, long runNanos, long bytesRead) {
+        this.exitCode = exitCode;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.timedOut = timedOut;
+        this.spawnNanos = spawnNanos;
+        this.runNanos = runNanos;
+        this.bytesRead = bytesRead;
+    }
+
+    public int getExitCode() { return exitCode; }
+    public String getStdout() { return stdout; }
+    public String getStderr() { return stderr; }
+    public boolean isTimedOut() { return timedOut; }
+    public long getSpawnNanos() { return spawnNanos; }
+    public long getRunNanos() { return runNanos; }
+    public long getBytesRead() { return bytesRead; }
+
+    @Override
+    public String toString() {
+        return "ScriptResult{" +
+                "exitCode=" + exitCode +
+                ", timedOut=" + timedOut +
+                ", stdout='" + stdout + '\'' +
+                ", stderr='" + stderr + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,107 @@
+package Model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// One long-lived "user-manager.sh serve" process. Not thread-safe, the pool hands it to one caller at a time.
+final class ScriptWorker implements Closeable {
+    private final Process process;
+    private final OutputStream stdin;
+    private final InputStream stdout;
+
+    ScriptWorker(String scriptPath) throws IOException {
+        process = new ProcessBuilder(scriptPath, "serve").start();
+        stdin = new BufferedOutputStream(process.getOutputStream());
+        stdout = new BufferedInputStream(process.getInputStream());
+
+        // Drain stderr so a chatty command can never block the worker
+        Thread errorDrainer = new Thread(() -> {
+            try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                String errorLine;
+                while ((errorLine = errorReader.readLine()) != null) {
+                    System.err.println("Error: " + errorLine);
+                }
+            } catch (IOException ignored) {
+                // Worker is gone
+            }
+        }, "user-manager-stderr");
+        errorDrainer.setDaemon(true);
+        errorDrainer.start();
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    ScriptWorkerPool.Reply call(String command, String... args) throws IOException {
+        StringBuilder request = new StringBuilder();
+        request.append(args.length + 1).append('\n');
+        appendArgument(request, command);
+        for (String arg : args) {
+            appendArgument(request, arg);
+        }
+        stdin.write(request.toString().getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+
+        // Header: "<exit_code> <byte_length>\n"
+        String header = readHeader();
+        int space = header.indexOf(' ');
+        if (space < 0) {
+            throw new IOException("Malformed reply header: " + header);
+        }
+        int exitCode = Integer.parseInt(header.substring(0, space));
+        int length = Integer.parseInt(header.substring(space + 1));
+        byte[] payload = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = stdout.read(payload, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Worker exited mid-reply");
+            }
+            read += n;
+        }
+        return new ScriptWorkerPool.Reply(exitCode, new String(payload, StandardCharsets.UTF_8),
+                header.length() + 1 + length);
+    }
+
+    private static void appendArgument(StringBuilder request, String arg) {
+        // One argument per line, console input never legitimately contains line breaks
+        if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Arguments cannot contain line breaks");
+        }
+        request.append(arg).append('\n');
+    }
+
+    private String readHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = stdout.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Worker exited");
+            }
+            header.write(b);
+        }
+        return header.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    // Also kills the command subshell serve runs and anything under it: left alive, they would hold the reply
+    // pipe open past the deadline and keep the store lock taken by lock_stores
+    @Override
+    public void close() {
+        try {
+            stdin.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+        ScriptExecutor.kill(process);
+    }
+}
@@ -0,0 +1,150 @@
+package Model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps a few warm "user-manager.sh serve" workers and spreads concurrent requests across them.
+// The pool size comes from -Dgahinga.script.workers (default 2).
+public class ScriptWorkerPool implements Closeable {
+    public static final String WORKERS_PROPERTY = "gahinga.script.workers";
+
+    private static final Map<String, ScriptWorkerPool> POOLS = new ConcurrentHashMap<>();
+
+    private final String scriptPath;
+    private final int maxWorkers;
+    private final LinkedBlockingQueue<ScriptWorker> idle = new LinkedBlockingQueue<>();
+    private final List<ScriptWorker> all = new ArrayList<>();
+    private boolean closed;
+
+    public ScriptWorkerPool(String scriptPath, int maxWorkers) {
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("maxWorkers must be at least 1");
+        }
+        this.scriptPath = scriptPath;
+        this.maxWorkers = maxWorkers;
+    }
+
+    public static int configuredWorkers() {
+        return Integer.getInteger(WORKERS_PROPERTY, 2);
+    }
+
+    // Shared pool for a script, created on first use
+    public static ScriptWorkerPool forScript(String scriptPath) {
+        return POOLS.computeIfAbsent(scriptPath, path -> {
+            ScriptWorkerPool pool = new ScriptWorkerPool(path, configuredWorkers());
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "user-manager-shutdown"));
+            return pool;
+        });
+    }
+
+    public Reply execute(String command, String... args) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ScriptWorker worker = acquire();
+        long acquired = System.nanoTime();
+        // A hung command gets its worker killed with everything it started, the same kill as a one-off child at
+        // its deadline, which turns the blocked read into an IOException below
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> killer = ScriptExecutor.getDefault().deadline(() -> {
+            timedOut.set(true);
+            worker.close();
+        }, ScriptExecutor.getDefault().getDefaultTimeoutMillis());
+        try {
+            Reply reply = worker.call(command, args);
+            killer.cancel(false);
+            if (timedOut.get()) {
+                // The reply won the race with the kill, but the worker is gone
+                throw new IOException("Worker killed at the deadline");
+            }
+            idle.add(worker);
+            return reply.timed(acquired - start, System.nanoTime() - acquired);
+        } catch (IOException | RuntimeException e) {
+            killer.cancel(false);
+            // The worker's stream state is unknown now, replace it on the next call
+            discard(worker);
+            if (timedOut.get()) {
+                throw new IOException("Command timed out: " + command, e);
+            }
+            throw e;
+        }
+    }
+
+    private ScriptWorker acquire() throws IOException, InterruptedException {
+        while (true) {
+            ScriptWorker worker = idle.poll();
+            if (worker == null) {
+                synchronized (this) {
+                    if (closed) {
+                        throw new IOException("Worker pool is closed");
+                    }
+                    if (all.size() < maxWorkers) {
+                        worker = new ScriptWorker(scriptPath);
+                        all.add(worker);
+                        return worker;
+                    }
+                }
+                // All workers busy; wake up now and then in case one was discarded
+                worker = idle.poll(100, TimeUnit.MILLISECONDS);
+            }
+            if (worker != null) {
+                if (worker.isAlive()) {
+                    return worker;
+                }
+                discard(worker);
+            }
+        }
+    }
+
+    private synchronized void discard(ScriptWorker worker) {
+        all.remove(worker);
+        worker.close();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (ScriptWorker worker : all) {
+            worker.close();
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    public static final class Reply {
+        private final int exitCode;
+        private final String output;
+        private final long bytesRead;
+        // Waiting for a worker (and starting one when the pool is not full yet), then the call itself
+        private final long spawnNanos;
+        private final long runNanos;
+
+        Reply(int exitCode, String output, long bytesRead) {
+            this(exitCode, output, bytesRead, -1, -1);
+        }
+
+        private Reply(int exitCode, String output, long bytesRead, long spawnNanos, long runNanos) {
+            this.exitCode = exitCode;
+            this.output = output;
+            this.bytesRead = bytesRead;
+            this.spawnNanos = spawnNanos;
+            this.runNanos = runNanos;
+        }
+
+        Reply timed(long spawnNanos, long runNanos) {
+            return new Reply(exitCode, output, bytesRead, spawnNanos, runNanos);
+        }
+
+        public int getExitCode() { return exitCode; }
+        public String getOutput() { return output; }
+        public long getBytesRead() { return bytesRead; }
+        public long getSpawnNanos() { return spawnNanos; }
+        public long getRunNanos() { return runNanos; }
+    }
+}
@@ -0,0 +1,146 @@
+package Model;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Logged-in sessions, kept in memory only so logging in and out never touches the stores.
+// A session expires after -Dgahinga.session.idleMillis without use (default 30 minutes); a background
+// sweep removes expired sessions so the table does not grow with abandoned terminals.
+public final class SessionManager {
+    public static final String IDLE_TTL_PROPERTY = "gahinga.session.idleMillis";
+
+    private static volatile SessionManager defaultManager;
+
+    private final long idleTtlNanos;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> byToken = new ConcurrentHashMap<>();
+    // Number of live sessions per user UUID, for the backend's "is this user logged in" checks
+    private final Map<String, Integer> activeByUuid = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    public SessionManager(long idleTtlMillis) {
+        this.idleTtlNanos = TimeUnit.MILLISECONDS.toNanos(idleTtlMillis);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, Math.min(idleTtlMillis / 2, 60_000L));
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public static SessionManager getDefault() {
+        SessionManager manager = defaultManager;
+        if (manager == null) {
+            synchronized (SessionManager.class) {
+                manager = defaultManager;
+                if (manager == null) {
+                    manager = new SessionManager(Long.getLong(IDLE_TTL_PROPERTY, 30 * 60 * 1000L));
+                    defaultManager = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    public Session open(String uuid, String email, UserRole role) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        Session session = new Session(token.toString(), uuid, email, role, System.nanoTime());
+        byToken.put(session.token, session);
+        activeByUuid.merge(uuid, 1, Integer::sum);
+        return session;
+    }
+
+    // The live session for the token, refreshed; null when unknown or idle for too long
+    public Session touch(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = byToken.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - session.lastAccessNanos > idleTtlNanos) {
+            remove(session);
+            return null;
+        }
+        session.lastAccessNanos = now;
+        return session;
+    }
+
+    public boolean isLoggedIn(String uuid) {
+        return uuid != null && activeByUuid.containsKey(uuid);
+    }
+
+    public void close(String token) {
+        Session session = token == null ? null : byToken.get(token);
+        if (session != null) {
+            remove(session);
+        }
+    }
+
+    // One pass over the sessions for a whole set of users, as a bulk delete needs
+    public void closeAll(Set<String> uuids) {
+        for (Session session : byToken.values()) {
+            if (uuids.contains(session.uuid)) {
+                remove(session);
+            }
+        }
+    }
+
+    public int size() {
+        return byToken.size();
+    }
+
+    // Removes expired sessions and returns how many went
+    public int sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (Session session : byToken.values()) {
+            if (now - session.lastAccessNanos > idleTtlNanos && remove(session)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private boolean remove(Session session) {
+        if (!byToken.remove(session.token, session)) {
+            return false;
+        }
+        activeByUuid.computeIfPresent(session.uuid, (uuid, count) -> count > 1 ? count - 1 : null);
+        return true;
+    }
+
+    public static final class Session {
+        private final String token;
+        private final String uuid;
+        private final String email;
+        private final UserRole role;
+        private volatile long lastAccessNanos;
+
+        private Session(String token, String uuid, String email, UserRole role, long lastAccessNanos) {
+            this.token = token;
+            this.uuid = uuid;
+            this.email = email;
+            this.role = role;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+
+        public String getToken() { return token; }
+        public String getUuid() { return uuid; }
+        public String getEmail() { return email; }
+        public UserRole getRole() { return role; }
+    }
+}
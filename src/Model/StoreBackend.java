@@ -0,0 +1,695 @@
+package Model;
+
+import Storage.LifeExpectancyTable;
+import Storage.PatientRecord;
+import Storage.PatientStore;
+import Storage.UserRecord;
+import Storage.UserStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+// In-process implementation of user-manager.sh.
+// Keeps user-store.txt and patients-store.txt in memory and answers with the script's replies.
+public class StoreBackend implements Backend, Closeable {
+    public static final String IMPORT_DIR_PROPERTY = "gahinga.import.dir";
+    private static final String INITIAL_ADMIN_EMAIL = "admin@lpmt.com";
+    private static final String INITIAL_ADMIN_PASSWORD = "admin123";
+    private static final String INVALID_COUNTRY = "Invalid country code";
+    private static final int STREAM_CHUNK = 1024;
+    private static final Pattern EMAIL_PATTERN =
+            Pattern.compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$");
+
+    private final UserStore users;
+    private final PatientStore patients;
+    private final LifeExpectancyTable lifeExpectancies;
+    private final SessionManager sessions = SessionManager.getDefault();
+    private final CommandMetrics metrics = CommandMetrics.getDefault();
+    private final RecordLocks locks = RecordLocks.fromProperties();
+    private final Authenticator authenticator;
+    private final UserIndex userIndex;
+
+    public StoreBackend(Path storageDir) throws IOException {
+        this.users = new UserStore(storageDir.resolve("user-store.txt"));
+        this.patients = new PatientStore(storageDir.resolve("patients-store.txt"));
+        this.lifeExpectancies = LifeExpectancyTable.load(storageDir.resolve("life-expectancy.csv"));
+        this.lifeExpectancies.watch();
+        if (users.isEmpty()) {
+            initializeUserStore();
+        }
+        this.authenticator = new Authenticator(users);
+        this.userIndex = new UserIndex(users, patients);
+    }
+
+    public UserStore getUserStore() { return users; }
+    public PatientStore getPatientStore() { return patients; }
+    public LifeExpectancyTable getLifeExpectancies() { return lifeExpectancies; }
+    public Authenticator getAuthenticator() { return authenticator; }
+    public UserIndex getUserIndex() { return userIndex; }
+
+    @Override
+    public String execute(String command, String... args) {
+        long start = System.nanoTime();
+        String response = null;
+        try {
+            response = dispatch(command, args);
+            return response;
+        } finally {
+            metrics.recordReply(command, System.nanoTime() - start, response);
+        }
+    }
+
+    private String dispatch(String command, String... args) {
+        try {
+            switch (command) {
+                case "initialize-user-store":
+                    return initializeUserStore();
+                case "get-life-expectancy":
+                    return getLifeExpectancy(arg(args, 0));
+                case "validate-uuid":
+                    if (args.length != 1) {
+                        return "Usage: user-manager.sh validate-uuid <uuid>";
+                    }
+                    return validateUuid(args[0]);
+                case "get-all-users":
+                    return getAllUsers(arg(args, 0));
+                case "delete-users":
+                    if (args.length < 2) {
+                        return "Usage: delete-users <accessType> <uuid>... | <accessType> <filter>...";
+                    }
+                    return deleteUsers(args);
+                case "list-users":
+                    if (args.length < 3) {
+                        return "Usage: list-users <accessType> <cursor|-> <limit> [country=..] [hiv=..] [art=..] [registered=..] [role=..]";
+                    }
+                    return listUsers(args);
+                case "initiate-registration":
+                    if (args.length != 2) {
+                        return "Usage: user-manager.sh initiate-registration <UUID_code> <email>";
+                    }
+                    return initiateRegistration(args[0], args[1]);
+                case "complete-registration":
+                    return completeRegistration(args);
+                case "import-registrations":
+                    if (args.length != 2) {
+                        return "Usage: import-registrations <UUID_code> <csvFile>";
+                    }
+                    return importRegistrations(args[0], args[1]);
+                case "view-profile":
+                    if (args.length != 1) {
+                        return "Usage: user-manager.sh view-profile <UUID_code>";
+                    }
+                    return viewProfile(args[0]);
+                case "login":
+                    if (args.length != 2) {
+                        return "Usage: user-manager.sh login <email> <password>";
+                    }
+                    return login(args[0], args[1]);
+                case "logout":
+                    if (args.length != 1) {
+                        return "Usage: user-manager.sh logout <email>";
+                    }
+                    return logout(args[0]);
+                case "modify-patient-profile":
+                    return modifyPatientProfile(args);
+                default:
+                    return "Unknown command: " + command;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "System error, please contact the administrator";
+        }
+    }
+
+    // Folds the mutation logs back into the text files
+    @Override
+    public void close() throws IOException {
+        try {
+            users.close();
+        } finally {
+            patients.close();
+            lifeExpectancies.close();
+        }
+    }
+
+    @Override
+    public void stream(LineSink lines, String command, String... args) throws IOException {
+        if (!"get-all-users".equals(command)) {
+            Backend.super.stream(lines, command, args);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            streamAllUsers(lines, args);
+            failed = false;
+        } finally {
+            metrics.record(command, System.nanoTime() - start, failed);
+        }
+    }
+
+    private void streamAllUsers(LineSink lines, String... args) throws IOException {
+        if (!UserRole.ADMIN.name().equals(arg(args, 0))) {
+            lines.accept("Access denied");
+            return;
+        }
+        // Fixed-size chunks keep memory flat and never hold the store lock while the sink writes
+        List<PatientRecord> chunk = new ArrayList<>(STREAM_CHUNK);
+        int position = 0;
+        while (true) {
+            chunk.clear();
+            position = patients.scan(position, STREAM_CHUNK, chunk);
+            if (chunk.isEmpty()) {
+                return;
+            }
+            for (PatientRecord patient : chunk) {
+                lines.accept(patient.toLine());
+            }
+        }
+    }
+
+    private String initializeUserStore() throws IOException {
+        if (users.findFirstByAccessType(UserRole.ADMIN.name()) != null) {
+            return "Admin already exists. Initialization skipped.";
+        }
+        users.add(new UserRecord(INITIAL_ADMIN_EMAIL, UUID.randomUUID().toString(),
+                sha256(INITIAL_ADMIN_PASSWORD), UserRole.ADMIN.name(), true, false));
+        return "";
+    }
+
+    private String initiateRegistration(String requester, String email) throws IOException {
+        String refusal = checkRegistrar(requester);
+        if (refusal != null) {
+            return refusal;
+        }
+        if (!EMAIL_PATTERN.matcher(email).matches()) {
+            return "Invalid email format.";
+        }
+        // Two admins initiating the same email at once must not both pass the check
+        ReentrantLock lock = locks.forKey(email);
+        lock.lock();
+        try {
+            if (users.findByEmail(email) != null) {
+                return "Email already registered.";
+            }
+            String newUuid = UUID.randomUUID().toString();
+            users.add(new UserRecord(email, newUuid, "", UserRole.PATIENT.name(), false, false));
+            return "Registration initiated. Use the following UUID to complete registration: " + newUuid;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The requester is the admin's UUID from its login reply.
+    // Returns the refusal, or null when the requester is a logged-in admin.
+    private String checkRegistrar(String requester) {
+        UserRecord admin = users.findByUuid(requester);
+        if (admin == null) {
+            return "UUID not found.";
+        }
+        if (!UserRole.ADMIN.name().equals(admin.getAccessType()) || !sessions.isLoggedIn(admin.getUuid())) {
+            return "Access denied.";
+        }
+        return null;
+    }
+
+    // Replies "Imported <n> of <rows> rows", then "<line>,<email>,<uuid>,<error>" for every row.
+    // Only files under -Dgahinga.import.dir (default imports/ in the working directory) are read, since remote
+    // admins name the file on the server.
+    private String importRegistrations(String requester, String fileName) throws IOException {
+        String refusal = checkRegistrar(requester);
+        if (refusal != null) {
+            return refusal;
+        }
+        Path importDir = Paths.get(System.getProperty(IMPORT_DIR_PROPERTY, "imports")).toAbsolutePath().normalize();
+        Path csvFile = importDir.resolve(fileName).normalize();
+        List<String> rows;
+        try {
+            // Real paths, so a symbolic link inside the directory cannot point outside it either
+            if (!csvFile.toRealPath().startsWith(importDir.toRealPath())) {
+                return "Access denied: imports are read from " + importDir;
+            }
+            rows = Files.readAllLines(csvFile);
+        } catch (NoSuchFileException e) {
+            return csvFile.startsWith(importDir) ? "File not found: " + importDir.relativize(csvFile)
+                    : "Access denied: imports are read from " + importDir;
+        }
+        List<ImportedRow> results = importRegistrations(rows);
+        int imported = 0;
+        StringBuilder lines = new StringBuilder();
+        for (ImportedRow row : results) {
+            if (row.getError() == null) {
+                imported++;
+            }
+            lines.append("\n").append(row.getLineNumber()).append(',').append(row.getEmail()).append(',')
+                    .append(row.getUuid() == null ? "" : row.getUuid()).append(',')
+                    .append(row.getError() == null ? "" : row.getError());
+        }
+        return "Imported " + imported + " of " + results.size() + " rows" + lines;
+    }
+
+    // Registers the rows of a CSV with one grouped write per store. A row is either an email, which initiates the
+    // registration like initiate-registration, or
+    // email,firstName,lastName,dateOfBirth,hasHIV,diagnosisDate,onART,artStartDate,countryISO,password,
+    // which completes it as well. A first row starting with "email" is taken as a header. Rows that fail
+    // validation are reported with their error and the rest are still imported.
+    public List<ImportedRow> importRegistrations(List<String> rows) throws IOException {
+        List<ImportedRow> results = new ArrayList<>(rows.size());
+        List<UserRecord> newUsers = new ArrayList<>(rows.size());
+        List<PatientRecord> newPatients = new ArrayList<>();
+        Set<String> emails = new HashSet<>();
+        // Every stripe, so no initiate- or complete-registration can slip in between the checks and the writes
+        locks.lockAll();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                String row = rows.get(i).trim();
+                String[] fields = row.split(",", -1);
+                if (row.isEmpty() || (i == 0 && fields[0].trim().equalsIgnoreCase("email"))) {
+                    continue;
+                }
+                String email = fields[0].trim();
+                String error = checkImportedRow(fields, emails);
+                if (error != null) {
+                    // Rejected rows are reported by line number only; their content is not echoed back
+                    results.add(new ImportedRow(i + 1, "", null, error));
+                    continue;
+                }
+                String uuid = UUID.randomUUID().toString();
+                if (fields.length == 1) {
+                    newUsers.add(new UserRecord(email, uuid, "", UserRole.PATIENT.name(), false, false));
+                } else {
+                    newUsers.add(new UserRecord(email, uuid, sha256(fields[9]), UserRole.PATIENT.name(), true, false));
+                    newPatients.add(newProfile(uuid, fields[1], fields[2], fields[3], "true".equals(fields[4]),
+                            fields[5], "true".equals(fields[6]), fields[7], fields[8]));
+                }
+                emails.add(email);
+                results.add(new ImportedRow(i + 1, email, uuid, null));
+            }
+            // Profiles first: a profile without its user is invisible, a registered user without a profile is not
+            patients.addAll(newPatients);
+            users.addAll(newUsers);
+        } finally {
+            locks.unlockAll();
+        }
+        return results;
+    }
+
+    // Error of an import row, or null when it can be registered
+    private String checkImportedRow(String[] fields, Set<String> emails) {
+        String email = fields[0].trim();
+        if (fields.length != 1 && fields.length != 10) {
+            return "Expected 1 or 10 columns but found " + fields.length;
+        }
+        if (!EMAIL_PATTERN.matcher(email).matches()) {
+            return "Invalid email format.";
+        }
+        if (emails.contains(email)) {
+            return "Email appears earlier in the file.";
+        }
+        if (users.findByEmail(email) != null) {
+            return "Email already registered.";
+        }
+        if (fields.length == 1) {
+            return null;
+        }
+        if (fields[3].isEmpty() || !isValidDate(fields[3])) {
+            return "Invalid date format for Date of Birth. Use YYYY-MM-DD.";
+        }
+        if (!isBoolean(fields[4]) || !isBoolean(fields[6])) {
+            return "hasHIV and onART must be true or false.";
+        }
+        if ("true".equals(fields[4])) {
+            if (!isValidDate(fields[5])) {
+                return "Invalid date format for Diagnosis Date. Use YYYY-MM-DD.";
+            }
+            if (fields[5].compareTo(fields[3]) < 0) {
+                return "Diagnosis Date cannot be before Date of Birth.";
+            }
+        }
+        if (!isValidDate(fields[7])) {
+            return "Invalid date format for ART Start Date. Use YYYY-MM-DD.";
+        }
+        if (Double.isNaN(lifeExpectancies.lookup(fields[8]))) {
+            return INVALID_COUNTRY;
+        }
+        if (fields[9].isEmpty()) {
+            return "Password is required.";
+        }
+        return null;
+    }
+
+    // Outcome of one import row: the new UUID, or the reason it was skipped
+    public static final class ImportedRow {
+        private final int lineNumber;
+        private final String email;
+        private final String uuid;
+        private final String error;
+
+        ImportedRow(int lineNumber, String email, String uuid, String error) {
+            this.lineNumber = lineNumber;
+            this.email = email;
+            this.uuid = uuid;
+            this.error = error;
+        }
+
+        public int getLineNumber() { return lineNumber; }
+        public String getEmail() { return email; }
+        public String getUuid() { return uuid; }
+        public String getError() { return error; }
+    }
+
+    private String getLifeExpectancy(String countryIso) {
+        String lifeExpectancy = lifeExpectancies.lookupText(countryIso);
+        return lifeExpectancy != null ? lifeExpectancy : INVALID_COUNTRY;
+    }
+
+    private String completeRegistration(String[] args) throws IOException {
+        if (users.isEmpty()) {
+            return "User was not initiated";
+        }
+        if (args.length != 10) {
+            return "Usage: user-manager.sh complete-registration <uuid> <firstName> <lastName> <dateOfBirth> <hasHIV> <diagnosisDate> <onART> <artStartDate> <countryISO> <password>";
+        }
+        // The same UUID completed twice at once would otherwise pass the check twice and add two profiles
+        ReentrantLock lock = locks.forKey(args[0]);
+        lock.lock();
+        try {
+            return register(args);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String register(String[] args) throws IOException {
+        String uuid = args[0];
+        UserRecord user = users.findByUuid(uuid);
+        if (user == null) {
+            return "User was not initiated";
+        }
+        if (user.isRegistered()) {
+            return "Registration already completed for this UUID.";
+        }
+
+        PatientRecord profile = newProfile(uuid, args[1], args[2], args[3], "true".equals(args[4]), args[5],
+                "true".equals(args[6]), args[7], args[8]);
+        if (profile == null) {
+            return "Failed to complete registration due to invalid country code.";
+        }
+
+        // Profile first, as in the import: if marking the user fails, a retry replaces the invisible profile
+        patients.add(profile);
+        users.update(user.withRegistration(sha256(args[9])));
+        return "Registration completed for user with UUID: " + uuid + "\n" +
+                "Expected lifespan: " + profile.getLifeExpectancy() + " years\n" +
+                "Expected demise date: " + profile.getDemiseDate();
+    }
+
+    // Profile with the remaining lifespan and demise date worked out as of today; null for an unknown country
+    private PatientRecord newProfile(String uuid, String firstName, String lastName, String dateOfBirth,
+                                     boolean hasHiv, String diagnosisDate, boolean onArt, String artStartDate,
+                                     String country) {
+        double lifespan = lifeExpectancies.lookup(country);
+        if (Double.isNaN(lifespan)) {
+            return null;
+        }
+        LocalDate today = LocalDate.now();
+        int remainingYears = LifeExpectancyCalculator.remainingYears(lifespan, year(dateOfBirth), hasHiv,
+                year(diagnosisDate), year(artStartDate), today.getYear());
+        LocalDate demiseDate = LifeExpectancyCalculator.demiseDate(remainingYears, today);
+        return new PatientRecord(uuid, firstName, lastName, dateOfBirth, hasHiv, diagnosisDate, onArt,
+                artStartDate, country, String.valueOf(remainingYears), demiseDate.toString());
+    }
+
+    // The caller closes its own session token; other terminals of the same user stay logged in
+    private String logout(String email) {
+        return "User logged out successfully";
+    }
+
+    // Replies "<accessType>,<uuid>,<sessionToken>"; the session lives in memory only
+    private String login(String email, String password) {
+        if (users.isEmpty()) {
+            return "User store is empty. Please register an admin first.";
+        }
+        Authenticator.Result result = authenticator.authenticate(email, password);
+        switch (result.getStatus()) {
+            case UNKNOWN_EMAIL:
+                return "Login failed. Email not found.";
+            case BAD_PASSWORD:
+                return "Login failed. Incorrect username or password.";
+            case NOT_REGISTERED:
+                return "User should first complete the registration";
+            default:
+                SessionManager.Session session = sessions.open(result.getUuid(), email, result.getRole());
+                return result.getRole() + "," + result.getUuid() + "," + session.getToken();
+        }
+    }
+
+    private String viewProfile(String uuid) {
+        UserRecord user = users.findByUuid(uuid);
+        if (user == null) {
+            return "UUID not found.";
+        }
+        if (!sessions.isLoggedIn(uuid)) {
+            return "Access denied.";
+        }
+        PatientRecord patient = patients.findByUuid(uuid);
+        if (patient == null) {
+            return "Profile not found for the given UUID.";
+        }
+        return "First Name: " + patient.getFirstName() + "\n" +
+                "Last Name: " + patient.getLastName() + "\n" +
+                "Date of Birth: " + patient.getDateOfBirth() + "\n" +
+                "Is HIV Positive: " + patient.isHivPositive() + "\n" +
+                "Date of Infection: " + patient.getDateOfInfection() + "\n" +
+                "On ART Drugs: " + patient.isOnARTDrugs() + "\n" +
+                "Date of start ART: " + patient.getStartARTDate() + "\n" +
+                "Country: " + patient.getCountry() + "\n" +
+                "Life Expectancy: " + patient.getLifeExpectancy() + "\n" +
+                "Demise Date: " + patient.getDemiseDate();
+    }
+
+    private String getAllUsers(String accessType) {
+        if (!UserRole.ADMIN.name().equals(accessType)) {
+            return "Access denied";
+        }
+        StringBuilder response = new StringBuilder();
+        for (PatientRecord patient : patients.findAll()) {
+            response.append(patient.toLine()).append("\n");
+        }
+        return response.toString().trim();
+    }
+
+    // UUIDs, or key=value filters as for list-users
+    private String deleteUsers(String[] args) throws IOException {
+        if (!UserRole.ADMIN.name().equals(args[0])) {
+            return "Access denied";
+        }
+        String[] targets = Arrays.copyOfRange(args, 1, args.length);
+        int count;
+        if (targets[0].contains("=")) {
+            try {
+                count = deleteUsers(UserIndex.Query.parse(targets));
+            } catch (IllegalArgumentException e) {
+                return "Invalid delete request: " + e.getMessage();
+            }
+        } else {
+            count = deleteUsers(Arrays.asList(targets));
+        }
+        return "Deleted " + count + " users";
+    }
+
+    // Deletes the users and their patient profiles with one tombstone batch per store and returns how many
+    // users went. Admin accounts are skipped so the system cannot lose its administrators this way.
+    public int deleteUsers(Collection<String> uuids) throws IOException {
+        // Lets registrations and profile edits of the targets finish first; their writes would fail after the delete
+        locks.lockAll();
+        try {
+            return deleteLocked(uuids);
+        } finally {
+            locks.unlockAll();
+        }
+    }
+
+    private int deleteLocked(Collection<String> uuids) throws IOException {
+        Set<String> targets = new HashSet<>();
+        for (String uuid : uuids) {
+            UserRecord user = users.findByUuid(uuid);
+            if (user == null ? patients.findByUuid(uuid) != null
+                    : !UserRole.ADMIN.name().equals(user.getAccessType())) {
+                targets.add(uuid);
+            }
+        }
+        if (targets.isEmpty()) {
+            return 0;
+        }
+        sessions.closeAll(targets);
+        patients.deleteAll(targets);
+        return users.deleteAll(targets);
+    }
+
+    public int deleteUsers(UserIndex.Query query) throws IOException {
+        return deleteUsers(userIndex.matchingUuids(query));
+    }
+
+    // Replies "NEXT <cursor>" or "END" on the first line, then one row per user
+    private String listUsers(String[] args) {
+        if (!UserRole.ADMIN.name().equals(args[0])) {
+            return "Access denied";
+        }
+        UserIndex.Page page;
+        try {
+            UserIndex.Query query = UserIndex.Query.parse(Arrays.copyOfRange(args, 3, args.length));
+            page = userIndex.list(query, "-".equals(args[1]) ? null : args[1], Integer.parseInt(args[2]));
+        } catch (IllegalArgumentException e) {
+            return "Invalid listing request: " + e.getMessage();
+        }
+        StringBuilder response = new StringBuilder();
+        response.append(page.getNextCursor() != null ? "NEXT " + page.getNextCursor() : "END");
+        for (UserIndex.Entry entry : page.getEntries()) {
+            response.append("\n").append(entry.toLine());
+        }
+        return response.toString();
+    }
+
+    private String validateUuid(String uuid) {
+        UserRecord user = users.findByUuid(uuid);
+        if (user != null && !user.isRegistered()) {
+            return user.getEmail();
+        }
+        return "Invalid or already registered UUID.";
+    }
+
+    private String modifyPatientProfile(String[] args) throws IOException {
+        if (args.length != 9) {
+            return "Usage: user-manager.sh modify-patient-profile <uuid> <firstName> <lastName> <dateOfBirth> <hasHIV> <diagnosisDate> <onART> <artStartDate> <countryISO>";
+        }
+        // Blank fields keep the stored values, so the read and the write must not interleave with another edit
+        ReentrantLock lock = locks.forKey(args[0]);
+        lock.lock();
+        try {
+            return updatePatientProfile(args);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String updatePatientProfile(String[] args) throws IOException {
+        String uuid = args[0];
+        UserRecord user = users.findByUuid(uuid);
+        if (user == null) {
+            return "UUID not found.";
+        }
+        if (!sessions.isLoggedIn(uuid)) {
+            return "Access denied.";
+        }
+        if (!isValidDate(args[3])) {
+            return "Invalid date format for Date of Birth. Use YYYY-MM-DD.";
+        }
+        if ("true".equals(args[4])) {
+            if (!isValidDate(args[5])) {
+                return "Invalid date format for Diagnosis Date. Use YYYY-MM-DD.";
+            }
+            if (args[5].compareTo(args[3]) < 0) {
+                return "Diagnosis Date cannot be before Date of Birth.";
+            }
+        }
+
+        PatientRecord stored = patients.findByUuid(uuid);
+        if (stored == null) {
+            return "Profile not found for the given UUID.";
+        }
+
+        // Update fields only if new values are provided
+        String firstName = orElse(args[1], stored.getFirstName());
+        String lastName = orElse(args[2], stored.getLastName());
+        String dateOfBirth = orElse(args[3], stored.getDateOfBirth());
+        boolean hasHiv = args[4].isEmpty() ? stored.isHivPositive() : "true".equals(args[4]);
+        String diagnosisDate = orElse(args[5], stored.getDateOfInfection());
+        boolean onArt = args[6].isEmpty() ? stored.isOnARTDrugs() : "true".equals(args[6]);
+        String artStartDate = orElse(args[7], stored.getStartARTDate());
+        String country = orElse(args[8], stored.getCountry());
+
+        double lifespan = lifeExpectancies.lookup(country);
+        if (Double.isNaN(lifespan)) {
+            return "Failed to update profile due to invalid country code.";
+        }
+
+        LocalDate today = LocalDate.now();
+        int roundedYears = LifeExpectancyCalculator.remainingYears(lifespan, year(dateOfBirth), hasHiv,
+                year(diagnosisDate), year(artStartDate), today.getYear());
+        LocalDate demiseDate = LifeExpectancyCalculator.demiseDate(roundedYears, today);
+
+        patients.update(new PatientRecord(uuid, firstName, lastName, dateOfBirth, hasHiv, diagnosisDate, onArt,
+                artStartDate, country, String.valueOf(roundedYears), demiseDate.toString()));
+        return "Patient profile updated successfully.";
+    }
+
+    private static String arg(String[] args, int index) {
+        return index < args.length ? args[index] : "";
+    }
+
+    private static String orElse(String value, String fallback) {
+        return value.isEmpty() ? fallback : value;
+    }
+
+    private static boolean isValidDate(String date) {
+        // `date -d ""` succeeds in the script, so empty dates are accepted too
+        if (date.isEmpty()) {
+            return true;
+        }
+        try {
+            LocalDate.parse(date);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBoolean(String value) {
+        return "true".equals(value) || "false".equals(value);
+    }
+
+    // `date -d "" +%Y` is the current year, so empty dates count as today
+    private static int year(String date) {
+        if (date == null || date.isEmpty()) {
+            return LocalDate.now().getYear();
+        }
+        try {
+            return LocalDate.parse(date).getYear();
+        } catch (DateTimeParseException e) {
+            return LocalDate.now().getYear();
+        }
+    }
+
+    static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Model;
+
+import java.io.Console;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+// The dialogue a thread is having with one user: the local console, or a client connection of View.Server.
+// Model code reads through Terminal.in() and prints through Terminal.out(), which follow the terminal installed
+// for the current thread, so one JVM can hold many dialogues at once. Threads without one use the console.
+public final class Terminal {
+    private static final ThreadLocal<Terminal> CURRENT = new ThreadLocal<>();
+    private static volatile Terminal console;
+
+    private final Scanner scanner;
+    // Null for the console, which follows System.setOut
+    private final PrintStream out;
+
+    private Terminal(Scanner scanner, PrintStream out) {
+        this.scanner = scanner;
+        this.out = out;
+    }
+
+    public Terminal(InputStream in, OutputStream out) {
+        this(new Scanner(in, StandardCharsets.UTF_8), new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    // One Scanner over System.in for the whole JVM, so no reader loses input another one buffered
+    public static Terminal console() {
+        Terminal terminal = console;
+        if (terminal == null) {
+            synchronized (Terminal.class) {
+                terminal = console;
+                if (terminal == null) {
+                    terminal = new Terminal(new Scanner(System.in), null);
+                    console = terminal;
+                }
+            }
+        }
+        return terminal;
+    }
+
+    public static Terminal current() {
+        Terminal terminal = CURRENT.get();
+        return terminal != null ? terminal : console();
+    }
+
+    // Installs the terminal for the calling thread; null goes back to the console
+    public static void use(Terminal terminal) {
+        if (terminal == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(terminal);
+        }
+    }
+
+    public static Scanner in() {
+        return current().getScanner();
+    }
+
+    public static PrintStream out() {
+        return current().getOut();
+    }
+
+    public Scanner getScanner() { return scanner; }
+    public PrintStream getOut() { return out != null ? out : System.out; }
+    public boolean isConsole() { return out == null; }
+
+    // Hidden input on a real console; remote terminals and redirected input get a plain prompt
+    public String readPassword(String prompt) {
+        Console system = isConsole() ? System.console() : null;
+        if (system != null) {
+            return new String(system.readPassword(prompt));
+        }
+        getOut().print(prompt);
+        return scanner.nextLine();
+    }
+}
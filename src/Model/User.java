@@ -1,9 +1,5 @@
 package Model;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 
 public abstract class User {
     private String firstName;
@@ -11,6 +7,7 @@ public abstract class User {
     private String email;
     private String password; // Hashed password
     protected UserRole accessType; // Protected to allow subclasses to set it directly
+    private String sessionToken; // In-memory session from SessionManager, null when logged out
 
     public User() {}
 
@@ -31,6 +28,8 @@ public abstract class User {
     public String getPassword() { return password; }
     public void setPassword(String password) { this.password = password; }
     public UserRole getAccessType() { return accessType; }
+    public String getSessionToken() { return sessionToken; }
+    public void setSessionToken(String sessionToken) { this.sessionToken = sessionToken; }
     public abstract void setAccessType();
 
     @Override
@@ -45,86 +44,60 @@ public abstract class User {
     }
 
     public String login() {
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                return executeScript(scriptPath, "login", email, password);
-            } else {
-                return "Script not found.";
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "Error during login.";
+        String response = backend().execute("login", email, password);
+        // "<accessType>,<uuid>,<sessionToken>" on success
+        String[] parts = response.split(",");
+        if (parts.length == 3 && (parts[0].equals("ADMIN") || parts[0].equals("PATIENT"))) {
+            sessionToken = parts[2];
         }
+        return response;
     }
 
     public String logout() {
-        try {
-            String scriptPath = findScript("user-manager.sh");
-            if (scriptPath != null) {
-                return executeScript(scriptPath, "logout", email);
-            } else {
-                return "Script not found.";
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "Error during logout.";
-        }
+        SessionManager.getDefault().close(sessionToken);
+        sessionToken = null;
+        return backend().execute("logout", email);
     }
 
-    // Method to find the script path dynamically
-    public String findScript(String scriptName) throws IOException {
-        File currentDir = new File(".");
-        return searchForScript(currentDir, scriptName);
+    // True while the session is alive; every call refreshes its idle timer
+    public boolean hasActiveSession() {
+        return SessionManager.getDefault().touch(sessionToken) != null;
     }
 
-    private String searchForScript(File directory, String scriptName) throws IOException {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    String result = searchForScript(file, scriptName);
-                    if (result != null) {
-                        return result;
-                    }
-                } else if (file.getName().equals(scriptName)) {
-                    return file.getCanonicalPath();
-                }
-            }
+    protected boolean checkSession() {
+        if (!hasActiveSession()) {
+            Terminal.out().println("Session expired. Please log in again.");
+            return false;
         }
-        return null;
+        return true;
     }
 
-    public static String executeScript(String... command) {
+    // Backend serving the user-manager commands, see Backends
+    protected static Backend backend() {
+        return Backends.current();
+    }
+
+    // The console text of a finished script: its stdout, then its stderr and exit status
+    static String describe(ScriptResult result) {
         StringBuilder response = new StringBuilder();
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        
-        try {
-            Process process = processBuilder.start();
-            
-            // Capture standard output from the script
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line).append("\n");
-            }
-            
-            // Capture error output from the script
-            BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            while ((line = errorReader.readLine()) != null) {
+
+        // Standard output first, then the error output of the script
+        response.append(result.getStdout());
+        if (response.length() > 0 && response.charAt(response.length() - 1) != '\n') {
+            response.append("\n");
+        }
+        for (String line : result.getStderr().split("\n")) {
+            if (!line.isEmpty()) {
                 response.append("ERROR: ").append(line).append("\n");
             }
-            
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                response.append("Script exited with error code: ").append(exitCode).append("\n");
-            }
-    
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            response.append("An error occurred: ").append(e.getMessage()).append("\n");
         }
-        
+
+        if (result.isTimedOut()) {
+            response.append("Script timed out").append("\n");
+        } else if (result.getExitCode() != 0) {
+            response.append("Script exited with error code: ").append(result.getExitCode()).append("\n");
+        }
+
         return response.toString().trim(); // Trim to remove any trailing new lines
     }
 
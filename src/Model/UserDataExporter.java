@@ -0,0 +1,64 @@
+package Model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+// Streams get-all-users into a CSV file through fixed-size buffers, so memory stays flat however many
+// patients there are. Optionally gzips the output and reports progress every PROGRESS_INTERVAL rows.
+public final class UserDataExporter {
+    public static final String HEADER = "UUID,Email,FirstName,LastName,DateOfBirth,IsHivPositive,DateOfInfection,OnARTDrugs,StartARTDate,Country,LifeExpectancy";
+    public static final int PROGRESS_INTERVAL = 10_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface Progress {
+        void rowsWritten(long rows);
+    }
+
+    private final Backend backend;
+
+    public UserDataExporter(Backend backend) {
+        this.backend = backend;
+    }
+
+    // Returns the number of rows written. On failure the partial file is removed.
+    public long export(String accessType, Path file, boolean gzip, Progress progress) throws IOException {
+        long[] rows = {0};
+        try (BufferedWriter writer = open(file, gzip)) {
+            writer.write(HEADER);
+            writer.newLine();
+            backend.stream(line -> {
+                // The backends answer refusals with a single line instead of rows
+                if (rows[0] == 0 && (line.equals("Access denied") || line.equals("Script not found."))) {
+                    throw new IOException(line);
+                }
+                writer.write(line);
+                writer.newLine();
+                rows[0]++;
+                if (progress != null && rows[0] % PROGRESS_INTERVAL == 0) {
+                    progress.rowsWritten(rows[0]);
+                }
+            }, "get-all-users", accessType);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        if (progress != null && rows[0] % PROGRESS_INTERVAL != 0) {
+            progress.rowsWritten(rows[0]);
+        }
+        return rows[0];
+    }
+
+    private static BufferedWriter open(Path file, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,429 @@
+package Model;
+
+import Storage.PatientRecord;
+import Storage.PatientStore;
+import Storage.UserRecord;
+import Storage.UserStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Secondary indexes over users and their patient profiles, for filtered, paged listings.
+// Every UUID gets an ordinal the first time either store shows it; ordinals never move, so a cursor (the next
+// ordinal) stays valid while users are added or edited. Booleans and the role are bitmaps over ordinals and
+// each country has a sorted postings list, so a query only looks at candidate rows.
+// Store writes are queued by the listeners and applied by a background drain or before the next query, which
+// keeps the listeners, running under the store locks, from ever waiting on this index.
+public final class UserIndex {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final ExecutorService DRAINER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final UserStore users;
+    private final PatientStore patients;
+    private final ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private String[] uuids = new String[1024];
+    private int size;
+
+    // Ordinals of deleted users; they keep their place so cursors stay valid, but never match
+    private final Bitmap deleted = new Bitmap();
+    private final Bitmap admins = new Bitmap();
+    private final Bitmap registered = new Bitmap();
+    private final Bitmap hivPositive = new Bitmap();
+    private final Bitmap onArt = new Bitmap();
+    private final Map<String, Postings> byCountry = new HashMap<>();
+    private String[] countryOf = new String[1024];
+
+    public UserIndex(UserStore users, PatientStore patients) {
+        this.users = users;
+        this.patients = patients;
+        users.addListener(this::enqueue);
+        patients.addListener(this::enqueue);
+        users.addDeleteListener(user -> enqueue(new Deletion(user.getUuid(), true)));
+        patients.addDeleteListener(patient -> enqueue(new Deletion(patient.getUuid(), false)));
+        synchronized (this) {
+            for (UserRecord user : users.findAll()) {
+                if (users.findByUuid(user.getUuid()) == user) {
+                    apply(user);
+                }
+            }
+            for (PatientRecord patient : patients.findAll()) {
+                if (patients.findByUuid(patient.getUuid()) == patient) {
+                    apply(patient);
+                }
+            }
+            // Writes queued while the snapshot was read replay in order, so each row ends at its latest state
+            drain();
+        }
+    }
+
+    // Filters left null match everything
+    public static final class Query {
+        private String country;
+        private Boolean hivPositive;
+        private Boolean onArt;
+        private Boolean registered;
+        private UserRole role;
+
+        public String getCountry() { return country; }
+        public void setCountry(String country) { this.country = country; }
+        public Boolean getHivPositive() { return hivPositive; }
+        public void setHivPositive(Boolean hivPositive) { this.hivPositive = hivPositive; }
+        public Boolean getOnArt() { return onArt; }
+        public void setOnArt(Boolean onArt) { this.onArt = onArt; }
+        public Boolean getRegistered() { return registered; }
+        public void setRegistered(Boolean registered) { this.registered = registered; }
+        public UserRole getRole() { return role; }
+        public void setRole(UserRole role) { this.role = role; }
+
+        // key=value filters as typed in the admin console: country, hiv, art, registered, role
+        public static Query parse(String[] filters) {
+            Query query = new Query();
+            for (String filter : filters) {
+                int separator = filter.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Expected key=value: " + filter);
+                }
+                String key = filter.substring(0, separator).trim().toLowerCase();
+                String value = filter.substring(separator + 1).trim();
+                switch (key) {
+                    case "country": query.setCountry(value.toUpperCase()); break;
+                    case "hiv": query.setHivPositive(parseBoolean(value)); break;
+                    case "art": query.setOnArt(parseBoolean(value)); break;
+                    case "registered": query.setRegistered(parseBoolean(value)); break;
+                    case "role": query.setRole(UserRole.valueOf(value.toUpperCase())); break;
+                    default: throw new IllegalArgumentException("Unknown filter: " + key);
+                }
+            }
+            return query;
+        }
+
+        private static Boolean parseBoolean(String value) {
+            if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")) {
+                return Boolean.TRUE;
+            }
+            if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("Expected true or false: " + value);
+        }
+    }
+
+    public static final class Entry {
+        private final UserRecord user;
+        private final PatientRecord patient;
+
+        Entry(UserRecord user, PatientRecord patient) {
+            this.user = user;
+            this.patient = patient;
+        }
+
+        public UserRecord getUser() { return user; }
+        public PatientRecord getPatient() { return patient; }
+
+        // uuid,email,accessType,registered,firstName,lastName,dateOfBirth,isHivPositive,onARTDrugs,country
+        public String toLine() {
+            String uuid = user != null ? user.getUuid() : patient.getUuid();
+            return uuid + "," +
+                    (user != null ? user.getEmail() + "," + user.getAccessType() + "," + user.isRegistered() : ",,") +
+                    "," +
+                    (patient != null ? patient.getFirstName() + "," + patient.getLastName() + "," +
+                            patient.getDateOfBirth() + "," + patient.isHivPositive() + "," +
+                            patient.isOnARTDrugs() + "," + patient.getCountry() : ",,,,,");
+        }
+    }
+
+    public static final class Page {
+        private final List<Entry> entries;
+        private final String nextCursor;
+
+        Page(List<Entry> entries, String nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Entry> getEntries() { return entries; }
+        // null on the last page
+        public String getNextCursor() { return nextCursor; }
+    }
+
+    // One page of matching users in ordinal order, starting at cursor (null for the first page)
+    public Page list(Query query, String cursor, int limit) {
+        int start = cursor == null || cursor.isEmpty() ? 0 : decodeCursor(cursor);
+        List<String> pageUuids = new ArrayList<>();
+        int next;
+        synchronized (this) {
+            drain();
+            next = select(query, start, Math.max(1, Math.min(MAX_PAGE_SIZE, limit)), pageUuids);
+        }
+        // The records are read outside the index lock; the stores take their own
+        List<Entry> entries = new ArrayList<>(pageUuids.size());
+        for (String uuid : pageUuids) {
+            entries.add(new Entry(users.findByUuid(uuid), patients.findByUuid(uuid)));
+        }
+        return new Page(entries, next >= 0 ? encodeCursor(next) : null);
+    }
+
+    // Every matching UUID, for bulk operations that do not need the records
+    public synchronized List<String> matchingUuids(Query query) {
+        drain();
+        List<String> matches = new ArrayList<>();
+        select(query, 0, Integer.MAX_VALUE, matches);
+        return matches;
+    }
+
+    // Adds up to limit matching UUIDs from ordinal start on and returns the ordinal of the next match, or -1
+    private int select(Query query, int start, int limit, List<String> out) {
+        if (query.getCountry() != null) {
+            Postings postings = byCountry.get(query.getCountry());
+            if (postings == null) {
+                return -1;
+            }
+            for (int i = postings.firstAtOrAfter(start); i < postings.size; i++) {
+                int ordinal = postings.ordinals[i];
+                if (matches(query, ordinal)) {
+                    if (out.size() == limit) {
+                        return ordinal;
+                    }
+                    out.add(uuids[ordinal]);
+                }
+            }
+            return -1;
+        }
+        for (int word = start >>> 6; size > 0 && word <= (size - 1) >>> 6; word++) {
+            long bits = candidates(query, word);
+            if (word == start >>> 6) {
+                bits &= -1L << start;
+            }
+            while (bits != 0) {
+                int ordinal = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (out.size() == limit) {
+                    return ordinal;
+                }
+                out.add(uuids[ordinal]);
+            }
+        }
+        return -1;
+    }
+
+    public synchronized int size() {
+        drain();
+        return size;
+    }
+
+    private boolean matches(Query query, int ordinal) {
+        return !deleted.get(ordinal)
+                && test(query.getHivPositive(), hivPositive, ordinal)
+                && test(query.getOnArt(), onArt, ordinal)
+                && test(query.getRegistered(), registered, ordinal)
+                && (query.getRole() == null || admins.get(ordinal) == (query.getRole() == UserRole.ADMIN))
+                && (query.getCountry() == null || query.getCountry().equals(countryOf[ordinal]));
+    }
+
+    private static boolean test(Boolean wanted, Bitmap bitmap, int ordinal) {
+        return wanted == null || bitmap.get(ordinal) == wanted;
+    }
+
+    // Ordinals of one 64-row word that pass every boolean filter
+    private long candidates(Query query, int word) {
+        int remaining = size - (word << 6);
+        long bits = remaining >= 64 ? -1L : (1L << remaining) - 1;
+        bits &= ~deleted.word(word);
+        bits &= mask(query.getHivPositive(), hivPositive, word);
+        bits &= mask(query.getOnArt(), onArt, word);
+        bits &= mask(query.getRegistered(), registered, word);
+        if (query.getRole() != null) {
+            bits &= mask(query.getRole() == UserRole.ADMIN, admins, word);
+        }
+        return bits;
+    }
+
+    private static long mask(Boolean wanted, Bitmap bitmap, int word) {
+        if (wanted == null) {
+            return -1L;
+        }
+        return wanted ? bitmap.word(word) : ~bitmap.word(word);
+    }
+
+    private void enqueue(Object record) {
+        pending.add(record);
+        if (drainScheduled.compareAndSet(false, true)) {
+            DRAINER.execute(() -> {
+                drainScheduled.set(false);
+                synchronized (this) {
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        Object record;
+        while ((record = pending.poll()) != null) {
+            if (record instanceof UserRecord) {
+                apply((UserRecord) record);
+            } else if (record instanceof PatientRecord) {
+                apply((PatientRecord) record);
+            } else {
+                apply((Deletion) record);
+            }
+        }
+    }
+
+    private void apply(UserRecord user) {
+        int ordinal = ordinal(user.getUuid());
+        deleted.set(ordinal, false);
+        admins.set(ordinal, UserRole.ADMIN.name().equals(user.getAccessType()));
+        registered.set(ordinal, user.isRegistered());
+    }
+
+    private void apply(PatientRecord patient) {
+        int ordinal = ordinal(patient.getUuid());
+        hivPositive.set(ordinal, patient.isHivPositive());
+        onArt.set(ordinal, patient.isOnARTDrugs());
+        String country = patient.getCountry() == null ? "" : patient.getCountry().toUpperCase();
+        String previous = countryOf[ordinal];
+        if (!country.equals(previous)) {
+            if (previous != null) {
+                byCountry.get(previous).remove(ordinal);
+            }
+            byCountry.computeIfAbsent(country, key -> new Postings()).add(ordinal);
+            countryOf[ordinal] = country;
+        }
+    }
+
+    private void apply(Deletion deletion) {
+        Integer ordinal = ordinals.get(deletion.uuid);
+        if (ordinal == null) {
+            return;
+        }
+        if (deletion.user) {
+            deleted.set(ordinal, true);
+            admins.set(ordinal, false);
+            registered.set(ordinal, false);
+        } else {
+            hivPositive.set(ordinal, false);
+            onArt.set(ordinal, false);
+            // The ordinal stays in its country postings, where matches() skips it; removing it one by one would
+            // shift the array once per deleted patient
+            countryOf[ordinal] = null;
+        }
+    }
+
+    private int ordinal(String uuid) {
+        Integer ordinal = ordinals.get(uuid);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (size == uuids.length) {
+            uuids = Arrays.copyOf(uuids, size * 2);
+            countryOf = Arrays.copyOf(countryOf, size * 2);
+        }
+        uuids[size] = uuid;
+        ordinals.put(uuid, size);
+        return size++;
+    }
+
+    private static String encodeCursor(int ordinal) {
+        return Integer.toString(ordinal, 36);
+    }
+
+    private static int decodeCursor(String cursor) {
+        try {
+            int ordinal = Integer.parseInt(cursor, 36);
+            if (ordinal < 0) {
+                throw new NumberFormatException();
+            }
+            return ordinal;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    // Queued delete of a user (user set) or of a patient profile
+    private static final class Deletion {
+        final String uuid;
+        final boolean user;
+
+        Deletion(String uuid, boolean user) {
+            this.uuid = uuid;
+            this.user = user;
+        }
+    }
+
+    // Growable bitmap over ordinals
+    private static final class Bitmap {
+        private long[] words = new long[16];
+
+        boolean get(int index) {
+            int word = index >>> 6;
+            return word < words.length && (words[word] & (1L << index)) != 0;
+        }
+
+        long word(int word) {
+            return word < words.length ? words[word] : 0;
+        }
+
+        void set(int index, boolean value) {
+            int word = index >>> 6;
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, Math.max(words.length * 2, word + 1));
+            }
+            if (value) {
+                words[word] |= 1L << index;
+            } else {
+                words[word] &= ~(1L << index);
+            }
+        }
+    }
+
+    // Sorted ordinals of one country. New users take the highest ordinal, so adds are nearly always appends.
+    private static final class Postings {
+        private int[] ordinals = new int[8];
+        private int size;
+
+        void add(int ordinal) {
+            int at = firstAtOrAfter(ordinal);
+            if (at < size && ordinals[at] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, at, ordinals, at + 1, size - at);
+            ordinals[at] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int at = firstAtOrAfter(ordinal);
+            if (at < size && ordinals[at] == ordinal) {
+                System.arraycopy(ordinals, at + 1, ordinals, at, size - at - 1);
+                size--;
+            }
+        }
+
+        int firstAtOrAfter(int ordinal) {
+            if (size == 0 || ordinals[size - 1] < ordinal) {
+                return size;
+            }
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            return at >= 0 ? at : -at - 1;
+        }
+    }
+}
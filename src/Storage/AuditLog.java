@@ -0,0 +1,357 @@
+package Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Audit trail written off the request path. Producers claim a slot of a preallocated ring with one CAS, copy
+// their fields into the slot's primitive arrays and publish it; they never block, lock or allocate, and when the
+// ring is full the record is dropped and counted instead. One consumer thread drains the ring into memory-mapped
+// segment files audit-<created millis>.seg of a fixed size, starting a new one when the current one is full,
+// and writes a LOST record for whatever was dropped since the last one.
+// Record layout: int record length, int CRC32 of the rest, long sequence, long epoch millis, byte action,
+// byte outcome, long count, short actor length, actor, short target length, target (ASCII, '?' for anything
+// else). A zero length ends a segment; read() stops there or at the first corrupt record.
+public final class AuditLog implements Closeable {
+    public static final String RING_SIZE_PROPERTY = "gahinga.audit.ringSize";
+    public static final String SEGMENT_BYTES_PROPERTY = "gahinga.audit.segmentBytes";
+    public static final String MAX_SEGMENTS_PROPERTY = "gahinga.audit.maxSegments";
+    public static final String FORCE_MILLIS_PROPERTY = "gahinga.audit.forceMillis";
+    public static final byte LOST = 0;
+    public static final byte OK = 0;
+    public static final byte FAILED = 1;
+    public static final int MAX_FIELD = 256;
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+    private static final int FIXED_SIZE = 4 + 4 + 8 + 8 + 1 + 1 + 8 + 2 + 2;
+    private static final int SPINS = 1000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public interface Reader {
+        void record(long sequence, long millis, byte action, byte outcome, long count, String actor, String target);
+    }
+
+    private final Path dir;
+    private final int mask;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long forceNanos;
+
+    // Slot i of the ring is the fields at index i, or at i * MAX_FIELD for the strings
+    private final AtomicLongArray published;
+    private final long[] millis;
+    private final byte[] actions;
+    private final byte[] outcomes;
+    private final long[] counts;
+    private final short[] actorLengths;
+    private final byte[] actors;
+    private final short[] targetLengths;
+    private final byte[] targets;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Next sequence the consumer reads; producers may claim up to consumed + ring size
+    private volatile long consumed;
+    private volatile boolean closed;
+    private volatile long written;
+    private volatile long segments;
+
+    private final Thread consumer;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer record;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long reportedDrops;
+    private volatile IOException failure;
+
+    public AuditLog(Path dir) throws IOException {
+        this.dir = dir;
+        int ringSize = Integer.highestOneBit(Math.max(2, Integer.getInteger(RING_SIZE_PROPERTY, 8192)));
+        this.mask = ringSize - 1;
+        this.segmentBytes = Math.max(FIXED_SIZE + 2 * MAX_FIELD,
+                Integer.getInteger(SEGMENT_BYTES_PROPERTY, 16 * 1024 * 1024));
+        this.maxSegments = Integer.getInteger(MAX_SEGMENTS_PROPERTY, 0);
+        this.forceNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(FORCE_MILLIS_PROPERTY, 1000L));
+        this.published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            published.set(i, -1);
+        }
+        this.millis = new long[ringSize];
+        this.actions = new byte[ringSize];
+        this.outcomes = new byte[ringSize];
+        this.counts = new long[ringSize];
+        this.actorLengths = new short[ringSize];
+        this.actors = new byte[ringSize * MAX_FIELD];
+        this.targetLengths = new short[ringSize];
+        this.targets = new byte[ringSize * MAX_FIELD];
+        this.record = ByteBuffer.allocate(FIXED_SIZE + 2 * MAX_FIELD);
+        Files.createDirectories(dir);
+        openSegment();
+        this.consumer = new Thread(this::consumeLoop, "audit-writer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Queues one record; false when the ring was full or the log is closed and the record was dropped.
+    // Null strings are written as empty, longer ones are cut at MAX_FIELD bytes.
+    public boolean append(byte action, byte outcome, long count, String actor, String target) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (closed || sequence - consumed > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        millis[slot] = System.currentTimeMillis();
+        actions[slot] = action;
+        outcomes[slot] = outcome;
+        counts[slot] = count;
+        actorLengths[slot] = copy(actor, actors, slot * MAX_FIELD);
+        targetLengths[slot] = copy(target, targets, slot * MAX_FIELD);
+        // The volatile store publishes the plain writes above to the consumer
+        published.set(slot, sequence);
+        return true;
+    }
+
+    private static short copy(String value, byte[] into, int offset) {
+        if (value == null) {
+            return 0;
+        }
+        int length = Math.min(value.length(), MAX_FIELD);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            into[offset + i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        return (short) length;
+    }
+
+    public Path getDir() { return dir; }
+    public long getDropped() { return dropped.get(); }
+    public long getRecordsWritten() { return written; }
+    public long getSegments() { return segments; }
+
+    // Waits until everything appended so far is in the mapped segment, e.g. before reading it back
+    public void flush() throws IOException {
+        long target = claimed.get();
+        while (consumed < target && consumer.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Drains what was appended, forces the segment and stops the consumer; later appends are dropped
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the audit log", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void consumeLoop() {
+        long next = 0;
+        long park = 0;
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+        try {
+            while (true) {
+                int slot = (int) next & mask;
+                if (published.get(slot) == next) {
+                    write(next, slot);
+                    next++;
+                    consumed = next;
+                    dirty = true;
+                    park = 0;
+                    continue;
+                }
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    writeLost(drops - reportedDrops);
+                    reportedDrops = drops;
+                    dirty = true;
+                }
+                // A producer may have claimed a slot and not published it yet; close waits for it
+                if (closed && next == claimed.get()) {
+                    break;
+                }
+                if (dirty && System.nanoTime() - lastForce >= forceNanos) {
+                    segment.force();
+                    lastForce = System.nanoTime();
+                    dirty = false;
+                }
+                // Spins briefly for a producer between claim and publish, then backs off while idle
+                if (park == 0) {
+                    for (int i = 0; i < SPINS && published.get(slot) != next; i++) {
+                        Thread.onSpinWait();
+                    }
+                    park = IDLE_PARK_NANOS;
+                } else {
+                    LockSupport.parkNanos(park);
+                    park = Math.min(park * 2, MAX_PARK_NANOS);
+                }
+            }
+            segment.force();
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            System.err.println("Error: the audit log stopped: " + e.getMessage());
+            // Producers see a full ring from now on and count their records as dropped
+            closed = true;
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void write(long sequence, int slot) throws IOException {
+        record.clear();
+        record.putInt(0).putInt(0).putLong(sequence).putLong(millis[slot]).put(actions[slot]).put(outcomes[slot])
+                .putLong(counts[slot]);
+        record.putShort(actorLengths[slot]).put(actors, slot * MAX_FIELD, actorLengths[slot]);
+        record.putShort(targetLengths[slot]).put(targets, slot * MAX_FIELD, targetLengths[slot]);
+        put();
+    }
+
+    private void writeLost(long count) throws IOException {
+        record.clear();
+        record.putInt(0).putInt(0).putLong(-1).putLong(System.currentTimeMillis()).put(LOST).put(FAILED)
+                .putLong(count).putShort((short) 0).putShort((short) 0);
+        put();
+    }
+
+    private void put() throws IOException {
+        int length = record.position();
+        record.putInt(0, length);
+        crc.reset();
+        crc.update(record.array(), 8, length - 8);
+        record.putInt(4, (int) crc.getValue());
+        // The zero length after the record must fit too, so a reader knows where the segment ends
+        if (segment.remaining() < length + 4) {
+            segment.force();
+            closeSegment();
+            openSegment();
+        }
+        record.flip();
+        segment.put(record);
+        written++;
+    }
+
+    private void openSegment() throws IOException {
+        long created = System.currentTimeMillis();
+        Path file;
+        do {
+            file = dir.resolve(PREFIX + created++ + SUFFIX);
+        } while (Files.exists(file));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segments++;
+        if (maxSegments > 0) {
+            List<Path> files = list(dir);
+            for (int i = 0; i < files.size() - maxSegments; i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: could not close the audit segment: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    // Segment files of a directory, oldest first
+    public static List<Path> list(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort((a, b) -> Long.compare(created(a), created(b)));
+        return files;
+    }
+
+    private static long created(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // Reads one segment back; returns the number of records read
+    public static long read(Path file, Reader reader) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        long records = 0;
+        while (buffer.remaining() >= FIXED_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length < FIXED_SIZE || length > buffer.remaining() + 4) {
+                break;
+            }
+            int checksum = buffer.getInt();
+            crc.reset();
+            crc.update(bytes, start + 8, length - 8);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            long sequence = buffer.getLong();
+            long millis = buffer.getLong();
+            byte action = buffer.get();
+            byte outcome = buffer.get();
+            long count = buffer.getLong();
+            String actor = string(buffer);
+            String target = string(buffer);
+            reader.record(sequence, millis, action, outcome, count, actor, target);
+            records++;
+            buffer.position(start + length);
+        }
+        return records;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.US_ASCII);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,209 @@
+package Storage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+
+// life-expectancy.csv loaded once into primitive arrays, looked up by Alpha-2 or Alpha-3 code.
+// Lookups read an immutable snapshot without allocating; reload() builds a new snapshot and swaps it in,
+// and watch() does that automatically whenever the CSV is replaced.
+public final class LifeExpectancyTable implements Closeable {
+    private final Path file;
+    private volatile Snapshot snapshot;
+    private WatchService watcher;
+
+    private LifeExpectancyTable(Path file, Snapshot snapshot) {
+        this.file = file;
+        this.snapshot = snapshot;
+    }
+
+    public static LifeExpectancyTable load(Path file) throws IOException {
+        return new LifeExpectancyTable(file, Snapshot.read(file));
+    }
+
+    public Path getFile() { return file; }
+
+    public int size() {
+        return snapshot.size;
+    }
+
+    public boolean contains(String code) {
+        return snapshot.slot(code) >= 0;
+    }
+
+    // Life expectancy in years, or NaN for an unknown code
+    public double lookup(String code) {
+        Snapshot current = snapshot;
+        int slot = current.slot(code);
+        return slot < 0 ? Double.NaN : current.values[slot];
+    }
+
+    // The value exactly as written in the CSV, or null for an unknown code
+    public String lookupText(String code) {
+        Snapshot current = snapshot;
+        int slot = current.slot(code);
+        return slot < 0 ? null : current.texts[slot];
+    }
+
+    public void reload() throws IOException {
+        snapshot = Snapshot.read(file);
+    }
+
+    // Reloads the table whenever the CSV is created, modified or moved into place
+    public synchronized void watch() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        WatchService service = directory.getFileSystem().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = service;
+        Thread thread = new Thread(() -> awaitChanges(service), "life-expectancy-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void awaitChanges(WatchService service) {
+        Path fileName = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (IOException | RuntimeException e) {
+                        // Half-written file; keep the previous snapshot until the next event
+                        System.err.println("Error: could not reload " + file + ": " + e.getMessage());
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    // Packs a 2 or 3 letter code into an int; 0 for anything else
+    static int key(String code) {
+        int length = code.length();
+        if (length < 2 || length > 3) {
+            return 0;
+        }
+        int key = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c > 0xFF) {
+                return 0;
+            }
+            key = (key << 8) | c;
+        }
+        return key;
+    }
+
+    // Open-addressing hash table over packed codes
+    private static final class Snapshot {
+        final int size;
+        final int[] keys;
+        final double[] values;
+        final String[] texts;
+        final int mask;
+
+        private Snapshot(int size, int capacity) {
+            this.size = size;
+            this.keys = new int[capacity];
+            this.values = new double[capacity];
+            this.texts = new String[capacity];
+            this.mask = capacity - 1;
+        }
+
+        int slot(String code) {
+            int key = key(code);
+            if (key == 0) {
+                return -1;
+            }
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                if (keys[i] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private void put(int key, double value, String text) {
+            int i = mix(key) & mask;
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            texts[i] = text;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        static Snapshot read(Path file) throws IOException {
+            List<String[]> rows = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                reader.readLine(); // header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Only the name columns are quoted, so count the code columns from the end
+                    String[] fields = line.split(",");
+                    if (fields.length < 7) {
+                        continue;
+                    }
+                    String value = fields[fields.length - 1].trim();
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    rows.add(new String[] {fields[fields.length - 4].trim(), fields[fields.length - 3].trim(), value});
+                }
+            }
+
+            // Two keys per country, kept under half full
+            int capacity = Integer.highestOneBit(Math.max(4, rows.size() * 4)) << 1;
+            Snapshot snapshot = new Snapshot(rows.size(), capacity);
+            for (String[] row : rows) {
+                double value = Double.parseDouble(row[2]);
+                for (int column = 0; column < 2; column++) {
+                    int key = key(row[column]);
+                    if (key != 0) {
+                        snapshot.put(key, value, row[2]);
+                    }
+                }
+            }
+            return snapshot;
+        }
+    }
+}
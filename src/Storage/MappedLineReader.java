@@ -0,0 +1,284 @@
+package Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a comma-separated store file through a read-only memory mapping.
+// Each non-empty line is handed to the visitor as a Fields view holding the field offsets into the mapping;
+// nothing is copied or decoded unless the visitor asks for a String. The view is reused for every line.
+// Files larger than one mapping window are mapped window by window, always starting on a line boundary.
+public final class MappedLineReader {
+    private static final long WINDOW = 256L << 20;
+    private static final int MAX_FIELDS = 32;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long COMMAS = 0x2C2C2C2C2C2C2C2CL;
+    // Value of each byte as a hex digit, -1 for anything else
+    private static final byte[] HEX = new byte[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            HEX[b] = (byte) Character.digit(b, 16);
+        }
+    }
+
+    public interface Visitor {
+        void visit(Fields fields) throws IOException;
+    }
+
+    private MappedLineReader() {}
+
+    // Returns the number of lines visited; a missing file has none
+    public static long read(Path file, Visitor visitor) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long lines = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            Fields fields = new Fields();
+            while (start < size) {
+                long length = Math.min(WINDOW, size - start);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                boolean last = start + length == size;
+                int lineStart = 0;
+                int limit = (int) length;
+                int newline;
+                while ((newline = indexOf(buffer, lineStart, limit, NEWLINES)) >= 0) {
+                    lines += visit(buffer, lineStart, newline, fields, visitor);
+                    lineStart = newline + 1;
+                }
+                if (last) {
+                    // Final line without a newline
+                    lines += visit(buffer, lineStart, limit, fields, visitor);
+                    start = size;
+                } else if (lineStart == 0) {
+                    throw new IOException("Line longer than " + WINDOW + " bytes in " + file);
+                } else {
+                    start += lineStart;
+                }
+            }
+        }
+        return lines;
+    }
+
+    // First index of the byte repeated in pattern within [from, to), or -1. Tests eight bytes per step:
+    // a zero byte of word ^ pattern marks a match, and the lowest flagged byte is always a real one.
+    static int indexOf(ByteBuffer buffer, int from, int to, long pattern) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buffer.getLong(i) ^ pattern;
+            long found = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        byte b = (byte) pattern;
+        for (; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int visit(MappedByteBuffer buffer, int from, int to, Fields fields, Visitor visitor)
+            throws IOException {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        if (to == from) {
+            return 0;
+        }
+        fields.reset(buffer, from, to);
+        visitor.visit(fields);
+        return 1;
+    }
+
+    // One line split on commas. Missing trailing fields read as empty, like the script's "read" does.
+    public static final class Fields {
+        private MappedByteBuffer buffer;
+        private final int[] starts = new int[MAX_FIELDS + 1];
+        private int count;
+        private int end;
+
+        private Fields() {}
+
+        private void reset(MappedByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.end = to;
+            count = 0;
+            starts[count++] = from;
+            int comma = from - 1;
+            while (count < MAX_FIELDS && (comma = indexOf(buffer, comma + 1, to, COMMAS)) >= 0) {
+                starts[count++] = comma + 1;
+            }
+            // starts[i + 1] - 1 is where field i ends
+            starts[count] = to + 1;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int length(int field) {
+            return field < count ? starts[field + 1] - 1 - starts[field] : 0;
+        }
+
+        public boolean isEmpty(int field) {
+            return length(field) == 0;
+        }
+
+        public byte byteAt(int field, int index) {
+            return buffer.get(starts[field] + index);
+        }
+
+        // Compares against an ASCII string without decoding the field
+        public boolean equalsAscii(int field, String value) {
+            int length = length(field);
+            if (length != value.length()) {
+                return false;
+            }
+            int start = starts[field];
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(start + i) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Same value as UserFilter's hash of the field's text, so filters are built without decoding the file
+        public long hash(int field) {
+            int start = starts[field];
+            return UserFilter.hash(buffer, start, start + length(field));
+        }
+
+        public boolean isTrue(int field) {
+            return equalsAscii(field, "true");
+        }
+
+        // yyyy-MM-dd straight from the bytes, as an epoch day; PatientTable.NO_DATE when empty or malformed
+        public int epochDay(int field) {
+            if (length(field) != 10 || byteAt(field, 4) != '-' || byteAt(field, 7) != '-') {
+                return PatientTable.NO_DATE;
+            }
+            int year = digits(field, 0, 4);
+            int month = digits(field, 5, 7);
+            int day = digits(field, 8, 10);
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+                return PatientTable.NO_DATE;
+            }
+            return epochDay(year, month, day);
+        }
+
+        // 8-4-4-4-12 hexadecimal digits
+        public boolean isUuid(int field) {
+            if (length(field) != 36) {
+                return false;
+            }
+            for (int i = 0; i < 36; i++) {
+                byte b = byteAt(field, i);
+                boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+                if (dash ? b != '-' : HEX[b & 0xFF] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Most (half 0) or least (half 1) significant bits of a field that passed isUuid()
+        public long uuidBits(int field, int half) {
+            long value = 0;
+            for (int i = half == 0 ? 0 : 19, end = half == 0 ? 18 : 36; i < end; i++) {
+                byte b = byteAt(field, i);
+                if (b != '-') {
+                    value = (value << 4) | HEX[b & 0xFF];
+                }
+            }
+            return value;
+        }
+
+        // Plain decimal such as 64 or 71.5; NaN when empty or malformed
+        public float decimal(int field) {
+            int length = length(field);
+            if (length == 0) {
+                return Float.NaN;
+            }
+            long digits = 0;
+            int scale = -1;
+            for (int i = 0; i < length; i++) {
+                byte b = byteAt(field, i);
+                if (b == '.' && scale < 0) {
+                    scale = 0;
+                } else if (b >= '0' && b <= '9' && i < 18) {
+                    digits = digits * 10 + (b - '0');
+                    if (scale >= 0) {
+                        scale++;
+                    }
+                } else {
+                    return Float.NaN;
+                }
+            }
+            return scale <= 0 ? digits : (float) (digits / Math.pow(10, scale));
+        }
+
+        public String getString(int field) {
+            int length = length(field);
+            if (length == 0) {
+                return "";
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(starts[field], bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // The whole line, with its original separators
+        public String line() {
+            byte[] bytes = new byte[end - starts[0]];
+            buffer.get(starts[0], bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int digits(int field, int from, int to) {
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                int digit = byteAt(field, i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        // Days from civil date (proleptic Gregorian), same result as LocalDate.of(...).toEpochDay()
+        private static int epochDay(int year, int month, int day) {
+            if (day > 28 && day > lengthOfMonth(year, month)) {
+                return PatientTable.NO_DATE;
+            }
+            int y = month <= 2 ? year - 1 : year;
+            int era = Math.floorDiv(y, 400);
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
+        }
+
+        private static int lengthOfMonth(int year, int month) {
+            if (month == 2) {
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            }
+            return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        }
+    }
+}
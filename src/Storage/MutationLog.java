@@ -0,0 +1,405 @@
+package Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// Append-only log of store mutations, kept next to the store file as <store>.log.
+// Record layout: int payload length, int CRC32 of type + payload, byte type, payload (UTF-8 store line).
+// Replay stops at the first torn or corrupt record and cuts the file there.
+// Appends are group-committed: writers queue their records and wait on the returned Commit while one flusher
+// thread writes everything queued with one write and one force, up to -Dgahinga.store.commitBatch records
+// (default 256). Records that arrive while a force runs make up the next batch, so the number of forces per
+// second stays flat as writers are added. -Dgahinga.store.commitWindowMicros (default 0) makes the flusher
+// also wait that long for a batch to fill, trading latency for fewer forces on a slow disk.
+public final class MutationLog implements Closeable {
+    public static final byte UPSERT = 'U';
+    public static final byte DELETE = 'D';
+    public static final String COMMIT_BATCH_PROPERTY = "gahinga.store.commitBatch";
+    public static final String COMMIT_WINDOW_PROPERTY = "gahinga.store.commitWindowMicros";
+
+    private static final int HEADER_SIZE = 9;
+    private static final int MAX_PAYLOAD = 1 << 20;
+
+    public interface Replay {
+        void apply(byte type, String payload);
+    }
+
+    private final Path file;
+    private final Path rotated;
+    private final int commitBatch;
+    private final long commitWindowNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Bytes in the log including queued records, for the compaction threshold without waiting on the flusher
+    private final AtomicLong size = new AtomicLong();
+    private final Thread flusher;
+    private FileChannel channel;
+    private volatile boolean closed;
+    // Set when a torn batch could not be cut off again; every later append is refused
+    private volatile IOException failure;
+    private volatile long records;
+    private volatile long forces;
+    // Appends whose commit failed, so the store can tell whether a snapshot may hold a change that never landed
+    private final AtomicLong failedCommits = new AtomicLong();
+
+    public MutationLog(Path file) throws IOException {
+        this.file = file;
+        this.rotated = file.resolveSibling(file.getFileName() + ".old");
+        this.commitBatch = Math.max(1, Integer.getInteger(COMMIT_BATCH_PROPERTY, 256));
+        this.commitWindowNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong(COMMIT_WINDOW_PROPERTY, 0L));
+        this.channel = open(file);
+        this.size.set(channel.size());
+        this.flusher = new Thread(this::flushLoop, "log-flusher-" + file.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Durability of queued records; await() returns once they are forced to disk
+    public static final class Commit {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        public void await() throws IOException {
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the log", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        }
+
+        // True once the records are known not to be durable; false while they are still queued
+        public boolean isFailed() {
+            return done.isCompletedExceptionally();
+        }
+    }
+
+    // Records to write, or a rotation, close or sync for the flusher to carry out in queue order
+    private static final class Pending {
+        static final int RECORDS = 0;
+        static final int ROTATE = 1;
+        static final int CLOSE = 2;
+        static final int SYNC = 3;
+
+        final int action;
+        final ByteBuffer bytes;
+        final int count;
+        final Commit commit = new Commit();
+
+        Pending(int action, ByteBuffer bytes, int count) {
+            this.action = action;
+            this.bytes = bytes;
+            this.count = count;
+        }
+    }
+
+    public Path getFile() { return file; }
+
+    // Replays a rotated log left over by an interrupted compaction, then the live log
+    public synchronized void replay(Replay replay) throws IOException {
+        if (Files.exists(rotated)) {
+            try (FileChannel old = FileChannel.open(rotated, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                replay(old, replay);
+            }
+        }
+        replay(channel, replay);
+        channel.position(channel.size());
+        size.set(channel.size());
+    }
+
+    // Queues the record; it is durable once the returned commit's await() returns
+    public Commit append(byte type, String payload) {
+        return submit(new Pending(Pending.RECORDS, encode(type, payload), 1));
+    }
+
+    // Several records that go to disk together, for bulk operations
+    public Commit appendAll(byte type, Collection<String> payloads) {
+        List<ByteBuffer> encoded = new ArrayList<>(payloads.size());
+        int length = 0;
+        for (String payload : payloads) {
+            ByteBuffer record = encode(type, payload);
+            encoded.add(record);
+            length += record.remaining();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (ByteBuffer record : encoded) {
+            bytes.put(record);
+        }
+        bytes.flip();
+        return submit(new Pending(Pending.RECORDS, bytes, encoded.size()));
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    // Records written and forces done since the log was opened, to see how well commits are grouped
+    public long getRecordsWritten() { return records; }
+    public long getForces() { return forces; }
+    public long getFailedCommits() { return failedCommits.get(); }
+
+    public boolean hasRotated() {
+        return Files.exists(rotated);
+    }
+
+    // Moves the live log aside and starts an empty one, after everything queued so far is written to the old one.
+    // Fails while an earlier rotated log is still there.
+    // The caller rewrites the base file from a snapshot taken under the same lock and then calls dropRotated();
+    // until then replay still sees the old records.
+    public void rotate() throws IOException {
+        submit(new Pending(Pending.ROTATE, null, 0)).await();
+    }
+
+    // Returns once every record queued before the call is written or has failed
+    public void sync() throws IOException {
+        submit(new Pending(Pending.SYNC, null, 0)).await();
+    }
+
+    public void dropRotated() throws IOException {
+        Files.deleteIfExists(rotated);
+    }
+
+    // Writes what is queued, then closes the log and stops the flusher
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            submit(new Pending(Pending.CLOSE, null, 0)).await();
+        }
+    }
+
+    private Commit submit(Pending pending) {
+        if (closed) {
+            fail(pending, new IOException(file + " is closed"));
+            return pending.commit;
+        }
+        if (failure != null && pending.action != Pending.CLOSE) {
+            fail(pending, new IOException(file + " failed earlier", failure));
+            return pending.commit;
+        }
+        if (pending.bytes != null) {
+            size.addAndGet(pending.bytes.remaining());
+        }
+        queue.add(pending);
+        return pending.commit;
+    }
+
+    // The only thread that writes the channel once the log is open
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>();
+        Pending next = null;
+        while (true) {
+            Pending first = next;
+            next = null;
+            if (first == null) {
+                try {
+                    first = queue.take();
+                } catch (InterruptedException e) {
+                    // Only close() ends the loop
+                    continue;
+                }
+            }
+            if (first.action != Pending.RECORDS) {
+                if (!runAction(first)) {
+                    break;
+                }
+                continue;
+            }
+            batch.clear();
+            batch.add(first);
+            next = collect(batch);
+            flush(batch);
+        }
+        // Whatever raced with close() is refused rather than left waiting
+        for (Pending pending; (pending = queue.poll()) != null; ) {
+            fail(pending, new IOException(file + " is closed"));
+        }
+    }
+
+    // Counted before the commit completes, so a writer that sees its failure also sees the count
+    private void fail(Pending pending, Exception e) {
+        if (pending.action == Pending.RECORDS) {
+            failedCommits.incrementAndGet();
+        }
+        pending.commit.done.completeExceptionally(e);
+    }
+
+    // Adds queued records to the batch up to the size limit, waiting up to the commit window for more.
+    // Returns a rotation, close or sync met on the way, which must wait until the batch is written.
+    private Pending collect(List<Pending> batch) {
+        long deadline = System.nanoTime() + commitWindowNanos;
+        int count = batch.get(0).count;
+        while (count < commitBatch) {
+            long remaining = deadline - System.nanoTime();
+            Pending pending;
+            try {
+                pending = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            } catch (InterruptedException e) {
+                return null;
+            }
+            if (pending == null) {
+                return null;
+            }
+            if (pending.action != Pending.RECORDS) {
+                return pending;
+            }
+            batch.add(pending);
+            count += pending.count;
+        }
+        return null;
+    }
+
+    private void flush(List<Pending> batch) {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        int count = 0;
+        long length = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = batch.get(i).bytes;
+            count += batch.get(i).count;
+            length += buffers[i].remaining();
+        }
+        long start = -1;
+        try {
+            if (failure != null) {
+                throw new IOException(file + " failed earlier", failure);
+            }
+            start = channel.position();
+            writeFully(buffers);
+            channel.force(false);
+            records += count;
+            forces++;
+            for (Pending pending : batch) {
+                pending.commit.done.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            size.addAndGet(-length);
+            if (start >= 0) {
+                cutBack(start, e);
+            }
+            for (Pending pending : batch) {
+                fail(pending, e);
+            }
+        }
+    }
+
+    // Removes whatever part of a failed batch reached the file. Replay stops at a torn record, so anything
+    // appended after it would be lost; when the cut fails too, the log refuses all further appends.
+    private void cutBack(long start, Exception cause) {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            IOException failed = new IOException("Could not cut a failed write off " + file, e);
+            failed.addSuppressed(cause);
+            failure = failed;
+            System.err.println("Error: " + failed.getMessage() + ": " + e.getMessage());
+        }
+    }
+
+
+    // False once the log is closed
+    private boolean runAction(Pending pending) {
+        try {
+            if (pending.action == Pending.ROTATE) {
+                // An existing rotated log has not been folded into the base yet; the rotation fails to keep it
+                if (Files.exists(rotated)) {
+                    throw new FileAlreadyExistsException(rotated.toString());
+                }
+                channel.close();
+                Files.move(file, rotated, StandardCopyOption.ATOMIC_MOVE);
+                channel = open(file);
+                size.set(channel.size());
+            } else if (pending.action == Pending.CLOSE) {
+                closed = true;
+                channel.close();
+            }
+            pending.commit.done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            fail(pending, e);
+        }
+        return pending.action != Pending.CLOSE;
+    }
+
+    static ByteBuffer encode(byte type, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(bytes);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+        buffer.putInt(bytes.length).putInt((int) crc.getValue()).put(type).put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static void replay(FileChannel channel, Replay replay) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            byte type = header.get();
+            if (length < 0 || length > MAX_PAYLOAD || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            replay.apply(type, new String(payload.array(), StandardCharsets.UTF_8));
+            position += HEADER_SIZE + length;
+        }
+        if (position < size) {
+            // Torn write from a crash: drop the tail so new records follow the last good one
+            channel.truncate(position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of log");
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package Storage;
+
+// One line of patients-store.txt:
+// uuid,firstName,lastName,dateOfBirth,isHivPositive,dateOfInfection,onARTDrugs,startARTDate,country,lifeExpectancy,demiseDate
+public final class PatientRecord {
+    private final String uuid;
+    private final String firstName;
+    private final String lastName;
+    private final String dateOfBirth;
+    private final boolean hivPositive;
+    private final String dateOfInfection;
+    private final boolean onARTDrugs;
+    private final String startARTDate;
+    private final String country;
+    private final String lifeExpectancy;
+    private final String demiseDate;
+
+    public PatientRecord(String uuid, String firstName, String lastName, String dateOfBirth, boolean hivPositive,
+                         String dateOfInfection, boolean onARTDrugs, String startARTDate, String country,
+                         String lifeExpectancy, String demiseDate) {
+        this.uuid = uuid;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.dateOfBirth = dateOfBirth;
+        this.hivPositive = hivPositive;
+        this.dateOfInfection = dateOfInfection;
+        this.onARTDrugs = onARTDrugs;
+        this.startARTDate = startARTDate;
+        this.country = country;
+        this.lifeExpectancy = lifeExpectancy;
+        this.demiseDate = demiseDate;
+    }
+
+    public String getUuid() { return uuid; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getDateOfBirth() { return dateOfBirth; }
+    public boolean isHivPositive() { return hivPositive; }
+    public String getDateOfInfection() { return dateOfInfection; }
+    public boolean isOnARTDrugs() { return onARTDrugs; }
+    public String getStartARTDate() { return startARTDate; }
+    public String getCountry() { return country; }
+    public String getLifeExpectancy() { return lifeExpectancy; }
+    public String getDemiseDate() { return demiseDate; }
+
+    public static PatientRecord parse(String line) {
+        String[] fields = UserRecord.pad(line.split(",", -1), 11);
+        return new PatientRecord(fields[0], fields[1], fields[2], fields[3], "true".equals(fields[4]),
+                fields[5], "true".equals(fields[6]), fields[7], fields[8], fields[9], fields[10]);
+    }
+
+    // Same as parse(String) for a line read in place by MappedLineReader
+    public static PatientRecord parse(MappedLineReader.Fields fields) {
+        return new PatientRecord(fields.getString(0), fields.getString(1), fields.getString(2), fields.getString(3),
+                fields.isTrue(4), fields.getString(5), fields.isTrue(6), fields.getString(7), fields.getString(8),
+                fields.getString(9), fields.getString(10));
+    }
+
+    public String toLine() {
+        return uuid + "," + firstName + "," + lastName + "," + dateOfBirth + "," + hivPositive + "," +
+                dateOfInfection + "," + onARTDrugs + "," + startARTDate + "," + country + "," +
+                lifeExpectancy + "," + demiseDate;
+    }
+
+    @Override
+    public String toString() {
+        return "PatientRecord{" +
+                "uuid='" + uuid + '\'' +
+                ", firstName='" + firstName + '\'' +
+                ", lastName='" + lastName + '\'' +
+                ", dateOfBirth=" + dateOfBirth +
+                ", hivPositive=" + hivPositive +
+                ", dateOfInfection=" + dateOfInfection +
+                ", onARTDrugs=" + onARTDrugs +
+                ", startARTDate=" + startARTDate +
+                ", country='" + country + '\'' +
+                ", lifeExpectancy=" + lifeExpectancy +
+                ", demiseDate=" + demiseDate +
+                '}';
+    }
+}
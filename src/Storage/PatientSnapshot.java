@@ -0,0 +1,370 @@
+package Storage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+// Columnar binary copy of patients-store.txt, kept next to it as patients-store.col.
+// Layout: a 32-byte header (magic, version, row count, size and modification time of the text file it was
+// built from), one block per column, then a footer listing each column's id, encoding, offset and length and a
+// trailer pointing at the footer. Countries are dictionary-encoded shorts, booleans are bit-packed, dates are
+// zigzag varint deltas between present values behind a presence bitmap. The file is mapped, so a query only
+// pages in the blocks of the columns it reads.
+public final class PatientSnapshot implements Closeable {
+    public static final String EXTENSION = ".col";
+
+    public enum Column { UUID, COUNTRY, HIV_POSITIVE, ON_ART_DRUGS, DATE_OF_BIRTH, DATE_OF_INFECTION,
+        START_ART_DATE, DEMISE_DATE, LIFE_EXPECTANCY }
+
+    private static final int MAGIC = 0x47485043; // "GHPC"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int FOOTER_ENTRY_SIZE = 24;
+    private static final int TRAILER_SIZE = 16;
+
+    private static final byte RAW = 0;
+    private static final byte DICTIONARY = 1;
+    private static final byte BITS = 2;
+    private static final byte DELTA = 3;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long[] offsets = new long[Column.values().length];
+    private final long[] lengths = new long[Column.values().length];
+
+    private PatientSnapshot(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(buffer.capacity() - 4) != MAGIC) {
+            throw new IOException("Not a patient snapshot");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported patient snapshot version " + buffer.getShort(4));
+        }
+        rows = buffer.getInt(8);
+        sourceSize = buffer.getLong(12);
+        sourceModified = buffer.getLong(20);
+        long footer = buffer.getLong(buffer.capacity() - TRAILER_SIZE);
+        int columns = buffer.getInt(buffer.capacity() - 8);
+        Arrays.fill(offsets, -1);
+        for (int i = 0; i < columns; i++) {
+            int entry = (int) footer + i * FOOTER_ENTRY_SIZE;
+            int id = buffer.get(entry);
+            if (id >= 0 && id < offsets.length) {
+                offsets[id] = buffer.getLong(entry + 8);
+                lengths[id] = buffer.getLong(entry + 16);
+            }
+        }
+    }
+
+    public static Path fileFor(Path textFile) {
+        String name = textFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return textFile.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    public static PatientSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new PatientSnapshot(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // The snapshot of textFile if there is one and it was built from the file as it is now, otherwise null
+    public static PatientSnapshot openIfCurrent(Path textFile) {
+        Path file = fileFor(textFile);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            PatientSnapshot snapshot = open(file);
+            if (snapshot.isCurrent(textFile)) {
+                return snapshot;
+            }
+            snapshot.close();
+        } catch (IOException e) {
+            System.err.println("Error: ignoring unreadable snapshot " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public boolean isCurrent(Path textFile) throws IOException {
+        return Files.exists(textFile) && Files.size(textFile) == sourceSize
+                && Files.getLastModifiedTime(textFile).toMillis() == sourceModified;
+    }
+
+    public String[] countries() {
+        ByteBuffer block = block(Column.COUNTRY);
+        String[] dictionary = new String[block.getShort() & 0xFFFF];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[block.getShort() & 0xFFFF];
+            block.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    // Dictionary index of every row's country, into countries()
+    public short[] countryIds() {
+        ByteBuffer block = block(Column.COUNTRY);
+        int entries = block.getShort() & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int length = block.getShort() & 0xFFFF;
+            block.position(block.position() + length);
+        }
+        short[] ids = new short[rows];
+        block.asShortBuffer().get(ids);
+        return ids;
+    }
+
+    // One bit per row, row i at bit (i & 63) of word i >> 6
+    public long[] bits(Column column) {
+        long[] words = new long[(rows + 63) >>> 6];
+        block(column).asLongBuffer().get(words);
+        return words;
+    }
+
+    public static boolean bit(long[] words, int row) {
+        return (words[row >>> 6] & (1L << row)) != 0;
+    }
+
+    // Epoch days, PatientTable.NO_DATE where the text field was empty
+    public int[] dates(Column column) {
+        ByteBuffer block = block(column);
+        long[] present = new long[(rows + 63) >>> 6];
+        block.asLongBuffer().get(present);
+        block.position(block.position() + present.length * 8);
+        int[] days = new int[rows];
+        int previous = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!bit(present, row)) {
+                days[row] = PatientTable.NO_DATE;
+                continue;
+            }
+            int shift = 0;
+            int zigzag = 0;
+            byte b;
+            do {
+                b = block.get();
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            days[row] = previous;
+        }
+        return days;
+    }
+
+    public float[] lifeExpectancies() {
+        float[] values = new float[rows];
+        block(Column.LIFE_EXPECTANCY).asFloatBuffer().get(values);
+        return values;
+    }
+
+    public String uuid(int row) {
+        ByteBuffer block = block(Column.UUID);
+        return new UUID(block.getLong(row * 16), block.getLong(row * 16 + 8)).toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer block(Column column) {
+        long offset = offsets[column.ordinal()];
+        if (offset < 0) {
+            throw new IllegalStateException("Snapshot has no " + column + " column");
+        }
+        return buffer.duplicate().position((int) offset).limit((int) (offset + lengths[column.ordinal()])).slice();
+    }
+
+    // Writes the snapshot of textFile's rows, already packed in table. The file is written next to the
+    // target and moved into place, so readers never map a half-written snapshot.
+    public static void write(Path textFile, PatientTable table, long sourceSize, long sourceModified)
+            throws IOException {
+        Path file = fileFor(textFile);
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (CountingOutput out = new CountingOutput(temp)) {
+                writeColumns(out, table, sourceSize, sourceModified);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static void writeColumns(CountingOutput out, PatientTable table, long sourceSize, long sourceModified)
+            throws IOException {
+        Column[] columns = Column.values();
+        int rows = table.size();
+        long[] offsets = new long[columns.length];
+        long[] lengths = new long[columns.length];
+        byte[] encodings = new byte[columns.length];
+        PatientTable.Row row = table.newRow();
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(rows);
+        out.writeLong(sourceSize);
+        out.writeLong(sourceModified);
+        out.pad(HEADER_SIZE);
+
+        for (Column column : columns) {
+            out.align();
+            offsets[column.ordinal()] = out.written();
+            switch (column) {
+                case UUID:
+                    encodings[column.ordinal()] = RAW;
+                    for (int i = 0; i < rows; i++) {
+                        row.moveTo(i);
+                        out.writeLong(row.getUuidMostSignificantBits());
+                        out.writeLong(row.getUuidLeastSignificantBits());
+                    }
+                    break;
+                case COUNTRY:
+                    encodings[column.ordinal()] = DICTIONARY;
+                    out.writeShort(table.countryCount());
+                    for (int id = 0; id < table.countryCount(); id++) {
+                        byte[] bytes = table.country(id).getBytes(StandardCharsets.UTF_8);
+                        out.writeShort(bytes.length);
+                        out.write(bytes);
+                    }
+                    for (int i = 0; i < rows; i++) {
+                        out.writeShort(row.moveTo(i).getCountryId());
+                    }
+                    break;
+                case HIV_POSITIVE:
+                case ON_ART_DRUGS:
+                    encodings[column.ordinal()] = BITS;
+                    writeBits(out, table, column);
+                    break;
+                case LIFE_EXPECTANCY:
+                    encodings[column.ordinal()] = RAW;
+                    for (int i = 0; i < rows; i++) {
+                        out.writeFloat(row.moveTo(i).getLifeExpectancy());
+                    }
+                    break;
+                default:
+                    encodings[column.ordinal()] = DELTA;
+                    writeDates(out, table, column);
+                    break;
+            }
+            lengths[column.ordinal()] = out.written() - offsets[column.ordinal()];
+        }
+
+        out.align();
+        long footer = out.written();
+        for (Column column : columns) {
+            out.writeByte(column.ordinal());
+            out.writeByte(encodings[column.ordinal()]);
+            out.pad(out.written() + 6);
+            out.writeLong(offsets[column.ordinal()]);
+            out.writeLong(lengths[column.ordinal()]);
+        }
+        out.writeLong(footer);
+        out.writeInt(columns.length);
+        out.writeInt(MAGIC);
+    }
+
+    private static void writeBits(CountingOutput out, PatientTable table, Column column) throws IOException {
+        PatientTable.Row row = table.newRow();
+        int rows = table.size();
+        for (int word = 0; word < (rows + 63) >>> 6; word++) {
+            long bits = 0;
+            for (int i = word << 6, end = Math.min(rows, i + 64); i < end; i++) {
+                row.moveTo(i);
+                boolean set = column == Column.HIV_POSITIVE ? row.isHivPositive() : row.isOnARTDrugs();
+                if (set) {
+                    bits |= 1L << i;
+                }
+            }
+            out.writeLong(bits);
+        }
+    }
+
+    private static void writeDates(CountingOutput out, PatientTable table, Column column) throws IOException {
+        PatientTable.Row row = table.newRow();
+        int rows = table.size();
+        int[] days = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            row.moveTo(i);
+            switch (column) {
+                case DATE_OF_BIRTH: days[i] = row.getDateOfBirth(); break;
+                case DATE_OF_INFECTION: days[i] = row.getDateOfInfection(); break;
+                case START_ART_DATE: days[i] = row.getStartARTDate(); break;
+                default: days[i] = row.getDemiseDate(); break;
+            }
+        }
+        for (int word = 0; word < (rows + 63) >>> 6; word++) {
+            long bits = 0;
+            for (int i = word << 6, end = Math.min(rows, i + 64); i < end; i++) {
+                if (days[i] != PatientTable.NO_DATE) {
+                    bits |= 1L << i;
+                }
+            }
+            out.writeLong(bits);
+        }
+        int previous = 0;
+        for (int day : days) {
+            if (day == PatientTable.NO_DATE) {
+                continue;
+            }
+            int delta = day - previous;
+            previous = day;
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                out.writeByte((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            out.writeByte(zigzag);
+        }
+    }
+
+    // DataOutputStream with padding helpers; size() is the offset of the next byte
+    private static final class CountingOutput extends DataOutputStream {
+        CountingOutput(Path file) throws IOException {
+            super(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        }
+
+        long written() {
+            return size();
+        }
+
+        void pad(long until) throws IOException {
+            while (size() < until) {
+                write(0);
+            }
+        }
+
+        // Blocks start on 8-byte boundaries so the long and float views line up
+        void align() throws IOException {
+            pad((size() + 7) & ~7L);
+        }
+    }
+}
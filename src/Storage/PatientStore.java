@@ -0,0 +1,50 @@
+package Storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// In-memory copy of patients-store.txt, indexed by UUID.
+// Changes go to patients-store.txt.log and are folded back into patients-store.txt by compaction,
+// which also rewrites the columnar snapshot patients-store.col.
+public class PatientStore extends TextStore<PatientRecord> {
+    public PatientStore(Path file) throws IOException {
+        super(file);
+    }
+
+    @Override
+    protected PatientRecord parse(String line) {
+        return PatientRecord.parse(line);
+    }
+
+    @Override
+    protected PatientRecord parse(MappedLineReader.Fields fields) {
+        return PatientRecord.parse(fields);
+    }
+
+    @Override
+    protected String toLine(PatientRecord record) {
+        return record.toLine();
+    }
+
+    @Override
+    protected String key(PatientRecord record) {
+        return record.getUuid();
+    }
+
+    public synchronized PatientRecord findByUuid(String uuid) {
+        return findByKey(uuid);
+    }
+
+    // Refreshes patients-store.col so analytics read the compacted state column by column
+    @Override
+    protected void compacted(List<PatientRecord> records) {
+        try {
+            PatientSnapshot.write(file, PatientTable.of(records), Files.size(file),
+                    Files.getLastModifiedTime(file).toMillis());
+        } catch (IOException e) {
+            System.err.println("Error: could not write the snapshot of " + file + ": " + e.getMessage());
+        }
+    }
+}
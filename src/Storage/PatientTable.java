@@ -0,0 +1,321 @@
+package Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Patients packed into fixed-width slots of one off-heap buffer, for scans over the whole cohort.
+// A slot holds the UUID as two longs, dates as int epoch days, the life expectancy as a float, the country as a
+// short into a dictionary and the two booleans as bits, so a patient costs SLOT_SIZE bytes outside the heap
+// instead of a dozen objects inside it. Names stay in PatientStore; nothing here needs them.
+// Rows are read through a reusable Row view. Writes are synchronized; scans may run in parallel once writes stop.
+public final class PatientTable {
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    public static final int SLOT_SIZE = 40;
+
+    private static final int UUID_MSB = 0;
+    private static final int UUID_LSB = 8;
+    private static final int DATE_OF_BIRTH = 16;
+    private static final int DATE_OF_INFECTION = 20;
+    private static final int START_ART_DATE = 24;
+    private static final int DEMISE_DATE = 28;
+    private static final int LIFE_EXPECTANCY = 32;
+    private static final int COUNTRY = 36;
+    private static final int FLAGS = 38;
+
+    private static final byte HIV_POSITIVE = 1;
+    private static final byte ON_ART_DRUGS = 2;
+
+    private ByteBuffer slots;
+    private int size;
+    // Open-addressing index of slot + 1 by UUID hash; 0 marks a free entry
+    private int[] index;
+    private final List<String> countries = new ArrayList<>();
+    private final Map<String, Short> countryIds = new HashMap<>();
+    private int rejected;
+
+    public PatientTable(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        index = new int[tableSize(capacity)];
+    }
+
+    public static PatientTable of(Collection<PatientRecord> records) {
+        PatientTable table = new PatientTable(records.size());
+        for (PatientRecord record : records) {
+            table.put(record);
+        }
+        return table;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Records left out because their UUID is not a UUID
+    public synchronized int getRejected() {
+        return rejected;
+    }
+
+    public int countryCount() {
+        return countries.size();
+    }
+
+    public String country(int id) {
+        return countries.get(id);
+    }
+
+    // Adds the record, or overwrites the slot of the same UUID; returns the slot or -1 when rejected
+    public synchronized int put(PatientRecord record) {
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(record.getUuid());
+        } catch (IllegalArgumentException e) {
+            rejected++;
+            return -1;
+        }
+        byte flags = 0;
+        if (record.isHivPositive()) {
+            flags |= HIV_POSITIVE;
+        }
+        if (record.isOnARTDrugs()) {
+            flags |= ON_ART_DRUGS;
+        }
+        return write(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                epochDay(record.getDateOfBirth()), epochDay(record.getDateOfInfection()),
+                epochDay(record.getStartARTDate()), epochDay(record.getDemiseDate()),
+                parseFloat(record.getLifeExpectancy()), countryId(record.getCountry()), flags);
+    }
+
+    // Same as put(PatientRecord) for a patients-store.txt line read in place, without building the record
+    public synchronized int put(MappedLineReader.Fields fields) {
+        if (!fields.isUuid(0)) {
+            rejected++;
+            return -1;
+        }
+        byte flags = 0;
+        if (fields.isTrue(4)) {
+            flags |= HIV_POSITIVE;
+        }
+        if (fields.isTrue(6)) {
+            flags |= ON_ART_DRUGS;
+        }
+        return write(fields.uuidBits(0, 0), fields.uuidBits(0, 1),
+                fields.epochDay(3), fields.epochDay(5), fields.epochDay(7), fields.epochDay(10),
+                fields.decimal(9), countryId(fields), flags);
+    }
+
+    // Maps patients-store.txt and packs it without creating objects per line
+    public static PatientTable load(Path file) throws IOException {
+        PatientTable table = new PatientTable(1024);
+        MappedLineReader.read(file, table::put);
+        return table;
+    }
+
+    // Slot of the UUID, or -1
+    public synchronized int slotOf(String uuid) {
+        try {
+            UUID parsed = UUID.fromString(uuid);
+            return find(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private int write(long msb, long lsb, int dateOfBirth, int dateOfInfection, int startARTDate, int demiseDate,
+                      float lifeExpectancy, short country, byte flags) {
+        int slot = find(msb, lsb);
+        if (slot < 0) {
+            if (size == slots.capacity() / SLOT_SIZE) {
+                grow();
+            }
+            slot = size++;
+            insert(msb, lsb, slot);
+        }
+        int base = slot * SLOT_SIZE;
+        slots.putLong(base + UUID_MSB, msb);
+        slots.putLong(base + UUID_LSB, lsb);
+        slots.putInt(base + DATE_OF_BIRTH, dateOfBirth);
+        slots.putInt(base + DATE_OF_INFECTION, dateOfInfection);
+        slots.putInt(base + START_ART_DATE, startARTDate);
+        slots.putInt(base + DEMISE_DATE, demiseDate);
+        slots.putFloat(base + LIFE_EXPECTANCY, lifeExpectancy);
+        slots.putShort(base + COUNTRY, country);
+        slots.put(base + FLAGS, flags);
+        return slot;
+    }
+
+    public Row newRow() {
+        return new Row();
+    }
+
+    // Flyweight over one slot; moveTo() repositions it without allocating
+    public final class Row {
+        private int base;
+        private int slot;
+
+        private Row() {}
+
+        public Row moveTo(int slot) {
+            this.slot = slot;
+            this.base = slot * SLOT_SIZE;
+            return this;
+        }
+
+        public int getSlot() { return slot; }
+        public long getUuidMostSignificantBits() { return slots.getLong(base + UUID_MSB); }
+        public long getUuidLeastSignificantBits() { return slots.getLong(base + UUID_LSB); }
+        public int getDateOfBirth() { return slots.getInt(base + DATE_OF_BIRTH); }
+        public int getDateOfInfection() { return slots.getInt(base + DATE_OF_INFECTION); }
+        public int getStartARTDate() { return slots.getInt(base + START_ART_DATE); }
+        public int getDemiseDate() { return slots.getInt(base + DEMISE_DATE); }
+        public float getLifeExpectancy() { return slots.getFloat(base + LIFE_EXPECTANCY); }
+        public int getCountryId() { return slots.getShort(base + COUNTRY); }
+        public String getCountry() { return countries.get(getCountryId()); }
+        public boolean isHivPositive() { return (slots.get(base + FLAGS) & HIV_POSITIVE) != 0; }
+        public boolean isOnARTDrugs() { return (slots.get(base + FLAGS) & ON_ART_DRUGS) != 0; }
+
+        public String getUuid() {
+            return new UUID(getUuidMostSignificantBits(), getUuidLeastSignificantBits()).toString();
+        }
+    }
+
+    // yyyy-MM-dd to an epoch day; NO_DATE for empty or malformed values
+    public static int epochDay(String value) {
+        if (value == null || value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return NO_DATE;
+        }
+        try {
+            return (int) LocalDate.of(Integer.parseInt(value, 0, 4, 10),
+                    Integer.parseInt(value, 5, 7, 10),
+                    Integer.parseInt(value, 8, 10, 10)).toEpochDay();
+        } catch (RuntimeException e) {
+            return NO_DATE;
+        }
+    }
+
+    public static LocalDate toLocalDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    // Calendar fields of an epoch day without building a LocalDate (civil-from-days), packed as
+    // year * 512 + month * 32 + day so that packed values order like dates
+    public static int civil(int epochDay) {
+        long z = epochDay + 719468L;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return year * 512 + month * 32 + day;
+    }
+
+    public static int yearOf(int epochDay) {
+        return Math.floorDiv(civil(epochDay), 512);
+    }
+
+    // Whole months between two epoch days, counted like ChronoUnit.MONTHS.between
+    public static int monthsBetween(int fromEpochDay, int toEpochDay) {
+        int from = civil(fromEpochDay);
+        int to = civil(toEpochDay);
+        long fromPacked = (Math.floorDiv(from, 512) * 12L + (Math.floorMod(from, 512) >> 5) - 1) * 32 + (from & 31);
+        long toPacked = (Math.floorDiv(to, 512) * 12L + (Math.floorMod(to, 512) >> 5) - 1) * 32 + (to & 31);
+        return (int) ((toPacked - fromPacked) / 32);
+    }
+
+    private short countryId(String country) {
+        String code = country == null || country.isEmpty() ? "UNKNOWN" : country;
+        Short id = countryIds.get(code);
+        if (id == null) {
+            if (countries.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct countries");
+            }
+            id = (short) countries.size();
+            countries.add(code);
+            countryIds.put(code, id);
+        }
+        return id;
+    }
+
+    // Dictionary id of the country field, comparing bytes so known countries cost no allocation
+    private short countryId(MappedLineReader.Fields fields) {
+        if (fields.isEmpty(8)) {
+            return countryId((String) null);
+        }
+        for (int id = 0; id < countries.size(); id++) {
+            if (fields.equalsAscii(8, countries.get(id))) {
+                return (short) id;
+            }
+        }
+        return countryId(fields.getString(8));
+    }
+
+    private static float parseFloat(String value) {
+        if (value == null || value.isEmpty()) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private int find(long msb, long lsb) {
+        int mask = index.length - 1;
+        for (int i = hash(msb, lsb) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int base = (index[i] - 1) * SLOT_SIZE;
+            if (slots.getLong(base + UUID_MSB) == msb && slots.getLong(base + UUID_LSB) == lsb) {
+                return index[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long msb, long lsb, int slot) {
+        int mask = index.length - 1;
+        int i = hash(msb, lsb) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    private void grow() {
+        int capacity = slots.capacity() / SLOT_SIZE * 2;
+        ByteBuffer larger = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        ByteBuffer source = slots.duplicate();
+        source.clear().limit(size * SLOT_SIZE);
+        larger.put(source).clear();
+        slots = larger;
+        index = new int[tableSize(capacity)];
+        for (int slot = 0; slot < size; slot++) {
+            int base = slot * SLOT_SIZE;
+            insert(slots.getLong(base + UUID_MSB), slots.getLong(base + UUID_LSB), slot);
+        }
+    }
+
+    // Power of two at least twice the slot capacity, so probes stay short
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,117 @@
+package Storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// File helpers shared by the stores
+final class StoreFiles {
+    // How often a throttled rewrite checks its pace, in characters
+    private static final long THROTTLE_STEP = 256 * 1024;
+
+    private StoreFiles() {}
+
+    // Exclusive OS lock on lockFile, held until the returned lock's channel is closed
+    static FileLock lock(Path lockFile) throws IOException {
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new StoreLockedException(lockFile + " is held by another process or store");
+        }
+        return lock;
+    }
+
+    // Same as the script's "awk ... > $temp_file && mv $temp_file $STORE", but the temp file
+    // lives next to the store so the final move is atomic
+    static void rewrite(Path file, List<String> lines) throws IOException {
+        rewrite(file, lines, 0);
+    }
+
+    // Same, writing at most bytesPerSecond (0 for no limit) so a background rewrite leaves the disk to others
+    static void rewrite(Path file, List<String> lines, long bytesPerSecond) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8))) {
+                long started = System.nanoTime();
+                long written = 0;
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                    written += line.length() + 1;
+                    if (bytesPerSecond > 0 && written % THROTTLE_STEP < line.length() + 1) {
+                        pace(file, started, written, bytesPerSecond);
+                    }
+                }
+                // The caller drops the log once this returns, so the new base must be on disk before the move
+                writer.flush();
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            // Temp files are created owner-only; keep the store's own permissions
+            if (Files.exists(file)) {
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+                } catch (UnsupportedOperationException ignored) {
+                    // Not a POSIX file system
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        syncDirectory(parent);
+    }
+
+    // Makes a rename in the directory durable
+    static void syncDirectory(Path dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Platforms that cannot open a directory (Windows) make renames durable on their own
+            return;
+        }
+        try (FileChannel directory = channel) {
+            directory.force(true);
+        }
+    }
+
+    // Sleeps until written bytes are no longer ahead of the allowed rate
+    private static void pace(Path file, long started, long written, long bytesPerSecond) throws IOException {
+        long due = started + written * 1_000_000_000L / bytesPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rewriting " + file, e);
+            }
+        }
+    }
+}
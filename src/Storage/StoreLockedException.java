@@ -0,0 +1,12 @@
+package Storage;
+
+import java.io.IOException;
+
+// Thrown when another process, or another store in this JVM, already has the store open
+public class StoreLockedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public StoreLockedException(String message) {
+        super(message);
+    }
+}
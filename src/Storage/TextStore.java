@@ -0,0 +1,438 @@
+package Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Common engine of the text stores: records kept in memory in file order with a primary-key index.
+// Mutations are appended to a MutationLog instead of rewriting the file. Once the log passes
+// -Dgahinga.store.compactBytes (default 1 MiB) a background compaction rewrites the base file,
+// and close() compacts so the text file is complete again when the JVM stops.
+// Deletes are tombstones: the log gets one DELETE record per key and the in-memory slot is cleared, so a bulk
+// delete costs one log write. Background compaction drops the deleted lines from the base file at no more than
+// -Dgahinga.store.compactBytesPerSecond (default 16 MiB/s) so it does not compete with interactive sessions.
+// An open store holds an exclusive OS lock on <store>.lock, so a second JVM cannot replay, append to or compact
+// the same log underneath it.
+// Writers apply their change and queue its log record under the store lock, then wait for the group commit
+// outside it, so many writers share one force. A change is visible to readers before its writer returns; if the
+// commit fails the writer gets the IOException and puts back what the change replaced, unless a later write to
+// the same key got there first. Compaction skips a snapshot that may hold a change not yet put back.
+abstract class TextStore<R> implements Closeable {
+    public static final String COMPACT_BYTES_PROPERTY = "gahinga.store.compactBytes";
+    public static final String COMPACT_RATE_PROPERTY = "gahinga.store.compactBytesPerSecond";
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "store-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    protected final Path file;
+    private final FileLock lock;
+    // Deleted records leave a null slot until enough of them pile up to be worth renumbering
+    protected final List<R> records = new ArrayList<>();
+    private final Map<String, Integer> byKey = new HashMap<>();
+    private final MutationLog log;
+    private final long compactBytes;
+    private final long compactRate;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Held for a whole compaction, so compact() and close() wait for a background one instead of racing it
+    private final Object compaction = new Object();
+    private boolean closed;
+    private final List<Consumer<R>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<R>> deleteListeners = new CopyOnWriteArrayList<>();
+    private int deleted;
+    // Failed commits whose changes have been put back; compaction waits for this to catch up with the log's count
+    private long undone;
+    // Base-file lines hidden by an earlier line with the same key
+    private int shadowed;
+
+    protected TextStore(Path file) throws IOException {
+        this.file = file;
+        this.compactBytes = Long.getLong(COMPACT_BYTES_PROPERTY, 1L << 20);
+        this.compactRate = Long.getLong(COMPACT_RATE_PROPERTY, 16L << 20);
+        this.lock = StoreFiles.lock(file.resolveSibling(file.getFileName() + ".lock"));
+        MutationLog opened = null;
+        try {
+            MappedLineReader.read(file, fields -> index(parse(fields)));
+            opened = new MutationLog(file.resolveSibling(file.getFileName() + ".log"));
+            this.log = opened;
+            log.replay((type, payload) -> {
+                if (type == MutationLog.UPSERT) {
+                    apply(parse(payload));
+                } else if (type == MutationLog.DELETE) {
+                    remove(payload);
+                }
+            });
+            if (log.hasRotated()) {
+                // A compaction was interrupted; finish it before the next rotation could overwrite its log
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (opened != null) {
+                opened.close();
+            }
+            lock.channel().close();
+            throw e;
+        }
+    }
+
+    protected abstract R parse(String line);
+
+    // Parses a base-file line read in place; the default decodes the whole line first
+    protected R parse(MappedLineReader.Fields fields) {
+        return parse(fields.line());
+    }
+
+    protected abstract String toLine(R record);
+
+    protected abstract String key(R record);
+
+    // Called whenever a record lands at a position, for subclasses that keep extra indexes
+    protected void indexed(R record, int position) {}
+
+    // Called when the record at a position is deleted
+    protected void removed(R record, int position) {}
+
+    // Called before deleted slots are squeezed out; every live record is then indexed() again at its new position
+    protected void renumbering() {}
+
+    public Path getFile() { return file; }
+
+    // Called with every record written from now on, under the store lock, after the record is visible
+    public synchronized void addListener(Consumer<R> listener) {
+        listeners.add(listener);
+    }
+
+    // Called with every record deleted from now on, under the store lock
+    public synchronized void addDeleteListener(Consumer<R> listener) {
+        deleteListeners.add(listener);
+    }
+
+    public synchronized int size() {
+        return records.size() - deleted;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public synchronized List<R> findAll() {
+        List<R> live = new ArrayList<>(size());
+        for (R record : records) {
+            if (record != null) {
+                live.add(record);
+            }
+        }
+        return live;
+    }
+
+    // Copies up to max live records starting at position from into out and returns the next position.
+    // Lets full scans walk the store in fixed-size chunks without holding the lock for the whole scan.
+    public synchronized int scan(int from, int max, List<R> out) {
+        int position = from;
+        int copied = 0;
+        while (position < records.size() && copied < max) {
+            R record = records.get(position++);
+            if (record != null) {
+                out.add(record);
+                copied++;
+            }
+        }
+        return position;
+    }
+
+    protected synchronized R findByKey(String key) {
+        Integer position = byKey.get(key);
+        return position == null ? null : records.get(position);
+    }
+
+    public void add(R record) throws IOException {
+        MutationLog.Commit commit;
+        R previous;
+        synchronized (this) {
+            previous = findByKey(key(record));
+            commit = write(record);
+        }
+        await(commit, Collections.singletonList(key(record)), Collections.singletonList(record),
+                Collections.singletonList(previous));
+    }
+
+    // Adds or replaces every record with one log write, for bulk imports
+    public void addAll(Collection<R> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(batch.size());
+        for (R record : batch) {
+            lines.add(toLine(record));
+        }
+        List<String> keys = new ArrayList<>(batch.size());
+        List<R> written = new ArrayList<>(batch);
+        List<R> previous = new ArrayList<>(batch.size());
+        MutationLog.Commit commit;
+        synchronized (this) {
+            commit = log.appendAll(MutationLog.UPSERT, lines);
+            for (R record : batch) {
+                keys.add(key(record));
+                previous.add(findByKey(key(record)));
+                apply(record);
+                for (Consumer<R> listener : listeners) {
+                    listener.accept(record);
+                }
+            }
+            compactIfNeeded();
+        }
+        await(commit, keys, written, previous);
+    }
+
+    // Replaces the record with the same key
+    public void update(R record) throws IOException {
+        MutationLog.Commit commit;
+        R previous;
+        synchronized (this) {
+            previous = findByKey(key(record));
+            if (previous == null) {
+                throw new IllegalArgumentException("Unknown key: " + key(record));
+            }
+            commit = write(record);
+        }
+        await(commit, Collections.singletonList(key(record)), Collections.singletonList(record),
+                Collections.singletonList(previous));
+    }
+
+    // Deletes every record whose key is in keys with one log write and returns how many there were.
+    // The base file keeps the lines until the next compaction.
+    public int deleteAll(Collection<String> keys) throws IOException {
+        Set<String> present = new LinkedHashSet<>();
+        List<R> removed = new ArrayList<>();
+        MutationLog.Commit commit;
+        synchronized (this) {
+            for (String key : keys) {
+                if (byKey.containsKey(key)) {
+                    present.add(key);
+                }
+            }
+            if (present.isEmpty()) {
+                return 0;
+            }
+            commit = log.appendAll(MutationLog.DELETE, present);
+            for (String key : present) {
+                R record = remove(key);
+                removed.add(record);
+                for (Consumer<R> listener : deleteListeners) {
+                    listener.accept(record);
+                }
+            }
+            compactIfNeeded();
+        }
+        await(commit, new ArrayList<>(present), Collections.nCopies(present.size(), null), removed);
+        return present.size();
+    }
+
+    // Waits for the commit. When it failed, puts back what each change replaced: the previous record, or nothing
+    // for an add, or the deleted record for a delete (written is null then).
+    private void await(MutationLog.Commit commit, List<String> keys, List<R> written, List<R> previous)
+            throws IOException {
+        try {
+            commit.await();
+        } catch (IOException e) {
+            if (commit.isFailed()) {
+                undo(keys, written, previous);
+            }
+            throw e;
+        }
+    }
+
+    // Newest change first, so a key written twice in one batch ends up with what it held before the batch.
+    // A key whose record is no longer the one written was changed again since and keeps that later change.
+    private synchronized void undo(List<String> keys, List<R> written, List<R> previous) {
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            String key = keys.get(i);
+            if (findByKey(key) != written.get(i)) {
+                continue;
+            }
+            R before = previous.get(i);
+            if (before != null) {
+                apply(before);
+                for (Consumer<R> listener : listeners) {
+                    listener.accept(before);
+                }
+            } else {
+                R record = remove(key);
+                for (Consumer<R> listener : deleteListeners) {
+                    listener.accept(record);
+                }
+            }
+        }
+        undone++;
+    }
+
+    // The mutation log, for its commit counters
+    public MutationLog getLog() { return log; }
+
+    // Rewrites the base file from the current records and empties the log, as fast as the disk allows
+    public void compact() throws IOException {
+        compact(0);
+    }
+
+    private void compact(long bytesPerSecond) throws IOException {
+        synchronized (compaction) {
+            if (!closed) {
+                compactLocked(bytesPerSecond);
+            }
+        }
+    }
+
+    private void compactLocked(long bytesPerSecond) throws IOException {
+        Object[] snapshot;
+        long failed;
+        synchronized (this) {
+            if (shadowed > 0 || (deleted > 0 && deleted * 4L > records.size())) {
+                renumber();
+            }
+            failed = log.getFailedCommits();
+            if (failed != undone) {
+                throw new IOException("A failed write to " + file + " is still being undone");
+            }
+            snapshot = records.toArray();
+            // A rotated log left by a failed compaction is covered by the snapshot as it is; the live log then
+            // stays and replays harmlessly over the new base until the next compaction rotates it
+            if (!log.hasRotated()) {
+                log.rotate();
+            } else {
+                log.sync();
+            }
+        }
+        // Every change in the snapshot has now been written or has failed; a failed one must not reach the base
+        if (log.getFailedCommits() != failed) {
+            throw new IOException("A write to " + file + " failed during compaction");
+        }
+        // Lines are built and written outside the lock; writers keep appending to the fresh log meanwhile, and the
+        // rotated one is only needed until the base is safe
+        List<String> lines = new ArrayList<>(snapshot.length);
+        List<R> live = new ArrayList<>(snapshot.length);
+        for (Object slot : snapshot) {
+            if (slot != null) {
+                @SuppressWarnings("unchecked")
+                R record = (R) slot;
+                lines.add(toLine(record));
+                live.add(record);
+            }
+        }
+        StoreFiles.rewrite(file, lines, bytesPerSecond);
+        log.dropRotated();
+        compacted(live);
+    }
+
+    // Called after compaction with the records now in the base file, for files derived from it
+    protected void compacted(List<R> records) {}
+
+    @Override
+    public void close() throws IOException {
+        synchronized (compaction) {
+            if (closed) {
+                return;
+            }
+            try {
+                compactLocked(0);
+                log.close();
+            } finally {
+                closed = true;
+                lock.channel().close();
+            }
+        }
+    }
+
+    private MutationLog.Commit write(R record) {
+        MutationLog.Commit commit = log.append(MutationLog.UPSERT, toLine(record));
+        apply(record);
+        for (Consumer<R> listener : listeners) {
+            listener.accept(record);
+        }
+        compactIfNeeded();
+        return commit;
+    }
+
+    private void compactIfNeeded() {
+        if (log.size() >= compactBytes && compacting.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                try {
+                    compact(compactRate);
+                } catch (IOException e) {
+                    System.err.println("Error: compaction of " + file + " failed: " + e.getMessage());
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    private void apply(R record) {
+        Integer position = byKey.get(key(record));
+        if (position == null) {
+            index(record);
+        } else {
+            records.set(position, record);
+            indexed(record, position);
+        }
+    }
+
+    private void index(R record) {
+        int position = records.size();
+        records.add(record);
+        // The script stops at the first matching line, so the first record wins
+        if (byKey.putIfAbsent(key(record), position) != null) {
+            shadowed++;
+        }
+        indexed(record, position);
+    }
+
+    private R remove(String key) {
+        Integer position = byKey.remove(key);
+        if (position == null) {
+            return null;
+        }
+        R record = records.get(position);
+        records.set(position, null);
+        deleted++;
+        removed(record, position);
+        return record;
+    }
+
+    // Squeezes out deleted slots. Lines shadowed by an earlier line with the same key go too: they were never
+    // visible, and after a delete they would otherwise come back on the next start.
+    private void renumber() {
+        List<R> live = new ArrayList<>(size());
+        for (int i = 0; i < records.size(); i++) {
+            R record = records.get(i);
+            // A shadowed line whose key was deleted has no position left
+            Integer position = record != null ? byKey.get(key(record)) : null;
+            if (position != null && position == i) {
+                live.add(record);
+            }
+        }
+        renumbering();
+        records.clear();
+        byKey.clear();
+        deleted = 0;
+        shadowed = 0;
+        for (R record : live) {
+            index(record);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package Storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+
+// Bloom filters over the emails and UUIDs of user-store.txt, kept next to it as user-store.bloom.
+// mightContain...() false means the key is certainly not in the store, so the caller can answer without looking;
+// true means it probably is (about 1% false positives at the sized capacity) and the store has to be asked.
+// Like patients-store.col the file records the size and modification time of the text file it describes, and a
+// filter that no longer matches its text file must be rebuilt before its misses can be trusted.
+// Layout: magic, version, hash count, key count, source size, source mtime, words per filter, then the email
+// filter and the UUID filter as big-endian longs.
+public final class UserFilter {
+    public static final String EXTENSION = ".bloom";
+
+    private static final int MAGIC = 0x4748424C; // "GHBL"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+    // Shortest plausible user-store.txt line, to size a filter from the file length alone
+    private static final int MIN_LINE_LENGTH = 48;
+
+    private final long[] emails;
+    private final long[] uuids;
+    private int keys;
+    private long sourceSize;
+    private long sourceModified;
+
+    private UserFilter(int words) {
+        this.emails = new long[words];
+        this.uuids = new long[words];
+    }
+
+    public UserFilter(long expectedKeys) {
+        this(words(expectedKeys));
+    }
+
+    public static Path fileFor(Path textFile) {
+        String name = textFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return textFile.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    // Filter of the user records written to textFile by a compaction
+    public static UserFilter of(Collection<UserRecord> users, Path textFile) throws IOException {
+        UserFilter filter = new UserFilter(users.size());
+        for (UserRecord user : users) {
+            filter.add(user.getEmail(), user.getUuid());
+        }
+        filter.stamp(textFile);
+        return filter;
+    }
+
+    // Scans user-store.txt in place, hashing the two key fields without building Strings
+    public static UserFilter build(Path textFile) throws IOException {
+        long size = Files.exists(textFile) ? Files.size(textFile) : 0;
+        UserFilter filter = new UserFilter(size / MIN_LINE_LENGTH);
+        long modified = Files.exists(textFile) ? Files.getLastModifiedTime(textFile).toMillis() : 0;
+        MappedLineReader.read(textFile, fields -> {
+            set(filter.emails, fields.hash(0));
+            set(filter.uuids, fields.hash(1));
+            filter.keys++;
+        });
+        // Stamped with the state from before the scan, so a write during the scan leaves it stale
+        filter.sourceSize = size;
+        filter.sourceModified = modified;
+        return filter;
+    }
+
+    // The filter of textFile from disk if it still matches the file, otherwise a fresh one, which is saved
+    public static UserFilter loadOrBuild(Path textFile) throws IOException {
+        Path file = fileFor(textFile);
+        if (Files.exists(file)) {
+            try {
+                UserFilter filter = read(file);
+                if (filter.isCurrent(textFile)) {
+                    return filter;
+                }
+            } catch (IOException e) {
+                System.err.println("Error: ignoring unreadable filter " + file + ": " + e.getMessage());
+            }
+        }
+        UserFilter filter = build(textFile);
+        filter.write(textFile);
+        return filter;
+    }
+
+    public synchronized int size() {
+        return keys;
+    }
+
+    public synchronized boolean mightContainEmail(String email) {
+        return test(emails, hash(email));
+    }
+
+    public synchronized boolean mightContainUuid(String uuid) {
+        return test(uuids, hash(uuid));
+    }
+
+    // For a writer that knows the keys it stored; stamp() once every change since the last stamp is added
+    public synchronized void add(String email, String uuid) {
+        set(emails, hash(email));
+        set(uuids, hash(uuid));
+        keys++;
+    }
+
+    // One stat call, since the script backend asks before every check
+    public synchronized boolean isCurrent(Path textFile) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(textFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return attributes.size() == sourceSize && attributes.lastModifiedTime().toMillis() == sourceModified;
+    }
+
+    // Declares the filter up to date with textFile as it is now. Only for a caller that has added every key
+    // written since the filter last matched the file, as of() has for the file it describes.
+    public synchronized void stamp(Path textFile) throws IOException {
+        sourceSize = Files.size(textFile);
+        sourceModified = Files.getLastModifiedTime(textFile).toMillis();
+    }
+
+    // Writes to a temporary file first so readers never map a half-written filter
+    public synchronized void write(Path textFile) throws IOException {
+        Path file = fileFor(textFile);
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeShort(HASHES);
+                out.writeInt(keys);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(emails.length);
+                out.writeInt(0);
+                for (long word : emails) {
+                    out.writeLong(word);
+                }
+                for (long word : uuids) {
+                    out.writeLong(word);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static UserFilter read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a user filter");
+            }
+            if (buffer.getShort() != VERSION || buffer.getShort() != HASHES) {
+                throw new IOException("Unsupported user filter version");
+            }
+            int keys = buffer.getInt();
+            long sourceSize = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            int words = buffer.getInt();
+            if (words <= 0 || buffer.capacity() != HEADER_SIZE + 16L * words) {
+                throw new IOException("Truncated user filter");
+            }
+            UserFilter filter = new UserFilter(words);
+            buffer.position(HEADER_SIZE);
+            buffer.asLongBuffer().get(filter.emails).get(filter.uuids);
+            filter.keys = keys;
+            filter.sourceSize = sourceSize;
+            filter.sourceModified = sourceModified;
+            return filter;
+        }
+    }
+
+    // 64-bit FNV-1a over the bytes, finished with the MurmurHash3 mixer so both halves are usable as hashes
+    static long hash(ByteBuffer bytes, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= bytes.get(i) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return hash(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    // Kirsch-Mitzenmacher: the i-th probe is h1 + i * h2
+    private static void set(long[] bits, long hash) {
+        long size = bits.length * 64L;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean test(long[] bits, long hash) {
+        long size = bits.length * 64L;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, size);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int words(long expectedKeys) {
+        long bits = Math.max(1024, expectedKeys) * BITS_PER_KEY;
+        return (int) Math.min(Integer.MAX_VALUE / 2, (bits + 63) >>> 6);
+    }
+}
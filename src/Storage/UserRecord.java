@@ -0,0 +1,73 @@
+package Storage;
+
+// One line of user-store.txt: email,uuid,passwordHash,accessType,isRegistered,isLoggedIn
+public final class UserRecord {
+    private final String email;
+    private final String uuid;
+    private final String passwordHash;
+    private final String accessType;
+    private final boolean registered;
+    private final boolean loggedIn;
+
+    public UserRecord(String email, String uuid, String passwordHash, String accessType, boolean registered, boolean loggedIn) {
+        this.email = email;
+        this.uuid = uuid;
+        this.passwordHash = passwordHash;
+        this.accessType = accessType;
+        this.registered = registered;
+        this.loggedIn = loggedIn;
+    }
+
+    public String getEmail() { return email; }
+    public String getUuid() { return uuid; }
+    public String getPasswordHash() { return passwordHash; }
+    public String getAccessType() { return accessType; }
+    public boolean isRegistered() { return registered; }
+    public boolean isLoggedIn() { return loggedIn; }
+
+    public UserRecord withLoggedIn(boolean loggedIn) {
+        return new UserRecord(email, uuid, passwordHash, accessType, registered, loggedIn);
+    }
+
+    public UserRecord withRegistration(String passwordHash) {
+        return new UserRecord(email, uuid, passwordHash, accessType, true, loggedIn);
+    }
+
+    public static UserRecord parse(String line) {
+        String[] fields = pad(line.split(",", -1), 6);
+        return new UserRecord(fields[0], fields[1], fields[2], fields[3],
+                "true".equals(fields[4]), "true".equals(fields[5]));
+    }
+
+    // Same as parse(String) for a line read in place by MappedLineReader
+    public static UserRecord parse(MappedLineReader.Fields fields) {
+        return new UserRecord(fields.getString(0), fields.getString(1), fields.getString(2), fields.getString(3),
+                fields.isTrue(4), fields.isTrue(5));
+    }
+
+    public String toLine() {
+        return email + "," + uuid + "," + passwordHash + "," + accessType + "," + registered + "," + loggedIn;
+    }
+
+    static String[] pad(String[] fields, int size) {
+        if (fields.length >= size) {
+            return fields;
+        }
+        String[] padded = new String[size];
+        for (int i = 0; i < size; i++) {
+            padded[i] = i < fields.length ? fields[i] : "";
+        }
+        return padded;
+    }
+
+    @Override
+    public String toString() {
+        return "UserRecord{" +
+                "email='" + email + '\'' +
+                ", uuid='" + uuid + '\'' +
+                ", accessType=" + accessType +
+                ", registered=" + registered +
+                ", loggedIn=" + loggedIn +
+                '}';
+    }
+}
@@ -0,0 +1,85 @@
+package Storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-memory copy of user-store.txt, indexed by UUID and email.
+// Changes go to user-store.txt.log and are folded back into user-store.txt by compaction,
+// which also rewrites the key filter user-store.bloom.
+public class UserStore extends TextStore<UserRecord> {
+    private Map<String, Integer> byEmail;
+
+    public UserStore(Path file) throws IOException {
+        super(file);
+    }
+
+    @Override
+    protected UserRecord parse(String line) {
+        return UserRecord.parse(line);
+    }
+
+    @Override
+    protected UserRecord parse(MappedLineReader.Fields fields) {
+        return UserRecord.parse(fields);
+    }
+
+    @Override
+    protected String toLine(UserRecord record) {
+        return record.toLine();
+    }
+
+    @Override
+    protected String key(UserRecord record) {
+        return record.getUuid();
+    }
+
+    @Override
+    protected void indexed(UserRecord record, int position) {
+        // Runs from the super constructor, before field initializers
+        if (byEmail == null) {
+            byEmail = new HashMap<>();
+        }
+        byEmail.putIfAbsent(record.getEmail(), position);
+    }
+
+    @Override
+    protected void removed(UserRecord record, int position) {
+        byEmail.remove(record.getEmail(), position);
+    }
+
+    @Override
+    protected void renumbering() {
+        byEmail.clear();
+    }
+
+    public synchronized UserRecord findByEmail(String email) {
+        Integer position = byEmail.get(email);
+        return position == null ? null : records.get(position);
+    }
+
+    public synchronized UserRecord findByUuid(String uuid) {
+        return findByKey(uuid);
+    }
+
+    // Refreshes user-store.bloom so the script backend can trust its misses against the compacted file
+    @Override
+    protected void compacted(List<UserRecord> records) {
+        try {
+            UserFilter.of(records, file).write(file);
+        } catch (IOException e) {
+            System.err.println("Error: could not write the filter of " + file + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized UserRecord findFirstByAccessType(String accessType) {
+        for (UserRecord record : records) {
+            if (record != null && record.getAccessType().equals(accessType)) {
+                return record;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+package View;
+
+import Model.Backends;
+import Model.Terminal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Serves the console menus to many terminals at once over plain text lines (`nc localhost 7070` or telnet).
+// Every connection gets its own Test dialogue and session on its own thread: a virtual thread when the JVM has
+// them (Java 21+), a platform thread otherwise. Listens on -Dgahinga.server.host (default 127.0.0.1) and
+// -Dgahinga.server.port (default 7070) and refuses clients beyond -Dgahinga.server.maxClients (default 10000).
+public class Server {
+    public static final String HOST_PROPERTY = "gahinga.server.host";
+    public static final String PORT_PROPERTY = "gahinga.server.port";
+    public static final String MAX_CLIENTS_PROPERTY = "gahinga.server.maxClients";
+    private static final int BACKLOG = 1024;
+
+    public static void main(String[] args) throws IOException {
+        String host = System.getProperty(HOST_PROPERTY, "127.0.0.1");
+        int port = Integer.getInteger(PORT_PROPERTY, 7070);
+        Semaphore clients = new Semaphore(Integer.getInteger(MAX_CLIENTS_PROPERTY, 10_000));
+        // Opens the stores before the first client instead of inside its login
+        Backends.current();
+
+        ExecutorService threads = virtualThreads();
+        boolean virtual = threads != null;
+        if (!virtual) {
+            threads = platformThreads();
+        }
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(host, port), BACKLOG);
+            System.out.println("Serving the Health Management System on " + server.getLocalSocketAddress()
+                    + (virtual ? " with virtual threads" : ""));
+            while (true) {
+                Socket socket = server.accept();
+                if (!clients.tryAcquire()) {
+                    refuse(socket);
+                    continue;
+                }
+                threads.execute(() -> {
+                    try {
+                        serve(socket);
+                    } finally {
+                        clients.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void serve(Socket socket) {
+        try (Socket client = socket) {
+            client.setTcpNoDelay(true);
+            new Test(new Terminal(client.getInputStream(), client.getOutputStream())).run();
+        } catch (NoSuchElementException e) {
+            // The client hung up mid-dialogue; run() has logged its user out
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error: client " + socket.getRemoteSocketAddress() + " failed: " + e);
+        }
+    }
+
+    private static void refuse(Socket socket) {
+        try (Socket client = socket) {
+            PrintStream out = new PrintStream(client.getOutputStream(), true, StandardCharsets.UTF_8);
+            out.println("Too many terminals are connected, please try again later.");
+        } catch (IOException ignored) {
+            // Gone already
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is Java 21; looked up by name so the build can stay on 17.
+    // Null on older JVMs.
+    static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService platformThreads() {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "terminal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}